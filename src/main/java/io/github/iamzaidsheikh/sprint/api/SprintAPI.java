@@ -1,10 +1,14 @@
 package io.github.iamzaidsheikh.sprint.api;
 
 import java.security.Principal;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 import javax.validation.Valid;
 
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -13,18 +17,35 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import io.github.iamzaidsheikh.sprint.auth.dto.UserDTO;
 import io.github.iamzaidsheikh.sprint.auth.service.IUserService;
+import io.github.iamzaidsheikh.sprint.common.CursorPage;
+import io.github.iamzaidsheikh.sprint.common.ETags;
+import io.github.iamzaidsheikh.sprint.conditional.ConditionalGet;
+import io.github.iamzaidsheikh.sprint.conditional.GoalStampSource;
+import io.github.iamzaidsheikh.sprint.conditional.ProfileStampSource;
 import io.github.iamzaidsheikh.sprint.exception.Error;
 import io.github.iamzaidsheikh.sprint.goal.dto.ExtendDTO;
 import io.github.iamzaidsheikh.sprint.goal.dto.GoalDTO;
 import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.goal.model.GoalStatus;
+import io.github.iamzaidsheikh.sprint.goal.model.GoalSummary;
 import io.github.iamzaidsheikh.sprint.goal.service.IGoalService;
+import io.github.iamzaidsheikh.sprint.leaderboard.model.LeaderboardEntry;
+import io.github.iamzaidsheikh.sprint.leaderboard.service.ILeaderboardService;
 import io.github.iamzaidsheikh.sprint.profile.model.UserProfile;
 import io.github.iamzaidsheikh.sprint.profile.service.IUserProfileService;
+import io.github.iamzaidsheikh.sprint.stats.model.UserStats;
+import io.github.iamzaidsheikh.sprint.stats.service.IStatsService;
+import io.github.iamzaidsheikh.sprint.task.dto.ApprovalResult;
+import io.github.iamzaidsheikh.sprint.task.dto.BatchTaskDTO;
+import io.github.iamzaidsheikh.sprint.task.dto.BulkApproveDTO;
 import io.github.iamzaidsheikh.sprint.task.dto.SubmitTaskDTO;
 import io.github.iamzaidsheikh.sprint.task.dto.TaskDTO;
 import io.github.iamzaidsheikh.sprint.task.service.ITaskService;
@@ -44,6 +65,9 @@ public class SprintAPI {
     private final ITaskService ts;
     private final IUserService us;
     private final IUserProfileService ups;
+    private final ILeaderboardService ls;
+    private final IStatsService ss;
+    private final GoalStampSource goalStamps;
 
     @Operation(summary = "Register new user")
     @ApiResponses(value = {
@@ -63,23 +87,30 @@ public class SprintAPI {
                 .body(profile);
     }
 
-    @Operation(summary = "Get user profile")
+    @Operation(summary = "Get user profile with a page of its goals and mentored goals")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Fetched user profile", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = UserProfile.class)) }),
+            @ApiResponse(responseCode = "304", description = "Profile matches the If-None-Match tag"),
+            @ApiResponse(responseCode = "400", description = "Invalid offset or limit", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = Error.class)) }),
             @ApiResponse(responseCode = "404", description = "Profile not found", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = Error.class)) })
     })
+    @ConditionalGet(ProfileStampSource.class)
     @GetMapping("/profile/{username}")
-    public ResponseEntity<UserProfile> getProfile(@PathVariable String username) {
-        return ResponseEntity.ok(ups.getProfile(username));
+    public ResponseEntity<UserProfile> getProfile(@PathVariable String username,
+            @RequestParam(defaultValue = "0") int offset, @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .body(ups.getProfile(username, offset, limit));
     }
 
-    @Operation(summary = "Get all goals [SECURED]")
+    @Operation(summary = "Get a page of goals [SECURED]")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "Fetched all goals", content = {
-                    @Content(mediaType = "application/json", schema = @Schema(implementation = Goal.class)) }),
-            @ApiResponse(responseCode = "400", description = "Invalid authorization header", content = {
+            @ApiResponse(responseCode = "200", description = "Fetched a page of goals", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = CursorPage.class)) }),
+            @ApiResponse(responseCode = "400", description = "Invalid authorization header, cursor or limit", content = {
                     @Content(mediaType = "application/json") }),
             @ApiResponse(responseCode = "401", content = {
                     @Content(mediaType = "application/json") }),
@@ -87,14 +118,78 @@ public class SprintAPI {
                     @Content(mediaType = "application/json") })
     })
     @GetMapping("/goals")
-    public ResponseEntity<List<Goal>> getAllGoals() {
-        return ResponseEntity.ok().body(gs.getAllGoals());
+    public ResponseEntity<CursorPage<Goal>> getAllGoals(@RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok().body(gs.getAllGoals(cursor, limit));
+    }
+
+    @Operation(summary = "Export goals as newline delimited JSON [SECURED]")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Streaming goals", content = {
+                    @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = Goal.class)) }),
+            @ApiResponse(responseCode = "400", description = "Invalid authorization header", content = {
+                    @Content(mediaType = "application/json") }),
+            @ApiResponse(responseCode = "401", content = {
+                    @Content(mediaType = "application/json") }),
+            @ApiResponse(responseCode = "403", content = {
+                    @Content(mediaType = "application/json") })
+    })
+    @GetMapping("/goals/export")
+    public ResponseEntity<StreamingResponseBody> exportGoals(@RequestParam(required = false) GoalStatus status,
+            @RequestParam(required = false) Instant from, @RequestParam(required = false) Instant to) {
+        StreamingResponseBody body = out -> gs.exportGoals(status, from, to, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @Operation(summary = "Get a page of in progress goals with a free mentor slot, by deadline [SECURED]")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Fetched a page of open goals without tasks", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = CursorPage.class)) }),
+            @ApiResponse(responseCode = "400", description = "Invalid authorization header, cursor or limit", content = {
+                    @Content(mediaType = "application/json") }),
+            @ApiResponse(responseCode = "401", content = {
+                    @Content(mediaType = "application/json") })
+    })
+    @GetMapping("/goals/open")
+    public ResponseEntity<CursorPage<Goal>> getOpenGoals(@RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok().body(gs.getOpenGoals(cursor, limit));
+    }
+
+    @Operation(summary = "Search goal titles and descriptions, most relevant first [SECURED]")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Fetched a page of matching goals without tasks", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = Goal.class)) }),
+            @ApiResponse(responseCode = "400", description = "Invalid authorization header, search text, offset or limit", content = {
+                    @Content(mediaType = "application/json") }),
+            @ApiResponse(responseCode = "401", content = {
+                    @Content(mediaType = "application/json") })
+    })
+    @GetMapping("/goals/search")
+    public ResponseEntity<List<Goal>> searchGoals(@RequestParam String q,
+            @RequestParam(defaultValue = "0") int offset, @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok().body(gs.searchGoals(q, offset, limit));
+    }
+
+    @Operation(summary = "Get goals the user authors or mentors that are due within the next days, with their tasks [SECURED]")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Fetched goals due soon, by deadline", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = Goal.class)) }),
+            @ApiResponse(responseCode = "400", description = "Invalid authorization header or days", content = {
+                    @Content(mediaType = "application/json") }),
+            @ApiResponse(responseCode = "401", content = {
+                    @Content(mediaType = "application/json") })
+    })
+    @GetMapping("/goals/due")
+    public ResponseEntity<List<Goal>> getDueSoon(@RequestParam(defaultValue = "7") int days, Principal principal) {
+        return ResponseEntity.ok().body(gs.getDueSoon(principal.getName(), days));
     }
 
     @Operation(summary = "Fetch goal by id [SECURED]")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Fetched goal", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = Goal.class)) }),
+            @ApiResponse(responseCode = "304", description = "Goal matches the If-None-Match tag"),
             @ApiResponse(responseCode = "404", description = "Could not find goal", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = Error.class)) }),
             @ApiResponse(responseCode = "401", content = {
@@ -102,9 +197,29 @@ public class SprintAPI {
             @ApiResponse(responseCode = "400", content = {
                     @Content(mediaType = "application/json") })
     })
+    @ConditionalGet(GoalStampSource.class)
     @GetMapping("/goals/{goalId}")
-    public ResponseEntity<Goal> getGoal(@PathVariable String goalId) {
-        return ResponseEntity.ok(gs.getGoal(goalId));
+    public ResponseEntity<Goal> getGoal(@PathVariable String goalId,
+            @RequestParam(defaultValue = "true") boolean tasks) {
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(gs.getGoal(goalId, tasks));
+    }
+
+    @Operation(summary = "Fetch goal summary without tasks by id [SECURED]")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Fetched goal summary", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = GoalSummary.class)) }),
+            @ApiResponse(responseCode = "304", description = "Goal matches the If-None-Match tag"),
+            @ApiResponse(responseCode = "404", description = "Could not find goal", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = Error.class)) }),
+            @ApiResponse(responseCode = "401", content = {
+                    @Content(mediaType = "application/json") }),
+            @ApiResponse(responseCode = "400", content = {
+                    @Content(mediaType = "application/json") })
+    })
+    @ConditionalGet(GoalStampSource.class)
+    @GetMapping("/goals/{goalId}/summary")
+    public ResponseEntity<GoalSummary> getGoalSummary(@PathVariable String goalId) {
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(gs.getGoalSummary(goalId));
     }
 
     @Operation(summary = "Create a new goal [SECURED]")
@@ -257,6 +372,27 @@ public class SprintAPI {
         return ResponseEntity.created(uri).body(taskId);
     }
 
+    @Operation(summary = "Create several tasks for goal at once [SECURED]")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Tasks created", content = {
+                    @Content(mediaType = "application/json") }),
+            @ApiResponse(responseCode = "404", description = "Could not find goal", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = Error.class)) }),
+            @ApiResponse(responseCode = "401", content = {
+                    @Content(mediaType = "application/json") }),
+            @ApiResponse(responseCode = "400", content = {
+                    @Content(mediaType = "application/json") })
+    })
+    @PutMapping("/goals/{goalId}/tasks/batch")
+    public ResponseEntity<List<String>> createTasks(@PathVariable String goalId,
+            @RequestBody @Valid BatchTaskDTO data, Principal principal) {
+        var taskIds = ts.createTasks(goalId, principal.getName(), data.getTasks());
+        var uri = ServletUriComponentsBuilder.fromCurrentContextPath().path("api/v1/goals/{goalId}")
+                .buildAndExpand(goalId)
+                .toUri();
+        return ResponseEntity.created(uri).body(taskIds);
+    }
+
     @Operation(summary = "Submit a task [SECURED]")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Task submitted", content = {
@@ -284,6 +420,7 @@ public class SprintAPI {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Fetched submission", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = SubmitTaskDTO.class)) }),
+            @ApiResponse(responseCode = "304", description = "Goal matches the If-None-Match tag"),
             @ApiResponse(responseCode = "404", description = "Could not find goal", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = Error.class)) }),
             @ApiResponse(responseCode = "404", description = "Could not find task", content = {
@@ -295,8 +432,17 @@ public class SprintAPI {
     })
     @GetMapping("/goals/{goalId}/tasks/{taskId}/submission")
     public ResponseEntity<SubmitTaskDTO> getSubmission(@PathVariable String goalId, @PathVariable String taskId,
-            Principal principal) {
-        return ResponseEntity.ok(ts.getSubmission(goalId, taskId, principal.getName()));
+            Principal principal, WebRequest request) {
+        // Not @ConditionalGet: only participants may learn whether a submission
+        // changed, so the service checks access before the stamp can answer.
+        // The stamp is still read first, so the tag is never newer than the body.
+        var stamp = goalStamps.find(Map.of("goalId", goalId));
+        var submission = ts.getSubmission(goalId, taskId, principal.getName());
+        if (stamp.isPresent() && request.checkNotModified(ETags.of(stamp.get(), null),
+                stamp.get().getLastModified() == null ? -1 : stamp.get().getLastModified().toEpochMilli())) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(submission);
     }
 
     @Operation(summary = "Approve task submission [SECURED]")
@@ -323,6 +469,21 @@ public class SprintAPI {
         return ResponseEntity.created(uri).body(ts.approveTask(goalId, taskId, principal.getName()));
     }
 
+    @Operation(summary = "Approve several submitted tasks at once [SECURED]")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Result of each approval", content = {
+                    @Content(mediaType = "application/json") }),
+            @ApiResponse(responseCode = "401", content = {
+                    @Content(mediaType = "application/json") }),
+            @ApiResponse(responseCode = "400", content = {
+                    @Content(mediaType = "application/json") })
+    })
+    @PutMapping("/tasks/approve")
+    public ResponseEntity<List<ApprovalResult>> approveTasks(@RequestBody @Valid BulkApproveDTO data,
+            Principal principal) {
+        return ResponseEntity.ok(ts.approveTasks(principal.getName(), data.getTasks()));
+    }
+
     @Operation(summary = "Delete task by id [SECURED]")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "Task deleted", content = {
@@ -342,4 +503,48 @@ public class SprintAPI {
         ts.deleteTask(goalId, taskId, principal.getName());
         return ResponseEntity.noContent().build();
     }
+
+    @Operation(summary = "Top users by completed goals [SECURED]")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Fetched top achievers", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = LeaderboardEntry.class)) }),
+            @ApiResponse(responseCode = "401", content = {
+                    @Content(mediaType = "application/json") }),
+            @ApiResponse(responseCode = "400", content = {
+                    @Content(mediaType = "application/json") })
+    })
+    @GetMapping("/leaderboard/achievers")
+    public ResponseEntity<List<LeaderboardEntry>> getTopAchievers() {
+        return ResponseEntity.ok(ls.getTopAchievers());
+    }
+
+    @Operation(summary = "Top users by mentored goals [SECURED]")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Fetched top mentors", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = LeaderboardEntry.class)) }),
+            @ApiResponse(responseCode = "401", content = {
+                    @Content(mediaType = "application/json") }),
+            @ApiResponse(responseCode = "400", content = {
+                    @Content(mediaType = "application/json") })
+    })
+    @GetMapping("/leaderboard/mentors")
+    public ResponseEntity<List<LeaderboardEntry>> getTopMentors() {
+        return ResponseEntity.ok(ls.getTopMentors());
+    }
+
+    @Operation(summary = "Goal and task statistics of a user, refreshed periodically [SECURED]")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Fetched user stats", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = UserStats.class)) }),
+            @ApiResponse(responseCode = "404", description = "No stats for the user yet", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = Error.class)) }),
+            @ApiResponse(responseCode = "401", content = {
+                    @Content(mediaType = "application/json") }),
+            @ApiResponse(responseCode = "400", content = {
+                    @Content(mediaType = "application/json") })
+    })
+    @GetMapping("/stats/{username}")
+    public ResponseEntity<UserStats> getStats(@PathVariable String username) {
+        return ResponseEntity.ok(ss.getStats(username));
+    }
 }
@@ -28,7 +28,8 @@ public class SecurityConfig {
         .authorizeRequests()
         .antMatchers("/api/v1/login", "/api/v1/register", "/api/v1/profile/**", "/api-docs", "/swagger-ui/**", "/api-docs/**", "/swagger-ui.html")
         .permitAll()
-        .antMatchers(HttpMethod.GET, "/api/v1/goals").hasAuthority("ROLE_ADMIN")
+        .antMatchers(HttpMethod.GET, "/api/v1/goals", "/api/v1/goals/export").hasAuthority("ROLE_ADMIN")
+        .antMatchers("/actuator/**").hasAuthority("ROLE_ADMIN")
         .anyRequest()
         .authenticated()
         .and()
@@ -0,0 +1,32 @@
+package io.github.iamzaidsheikh.sprint.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import io.github.iamzaidsheikh.sprint.exception.BadRequestException;
+
+public final class CursorCodec {
+
+  private static final String SEPARATOR = ":";
+
+  private CursorCodec() {
+  }
+
+  public static String encode(String... parts) {
+    var raw = String.join(SEPARATOR, parts);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static String[] decode(String cursor, int expectedParts) {
+    try {
+      var raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      var parts = raw.split(SEPARATOR, -1);
+      if (parts.length != expectedParts) {
+        throw new BadRequestException("Invalid cursor: " + cursor);
+      }
+      return parts;
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException("Invalid cursor: " + cursor);
+    }
+  }
+}
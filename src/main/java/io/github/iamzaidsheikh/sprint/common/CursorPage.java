@@ -0,0 +1,15 @@
+package io.github.iamzaidsheikh.sprint.common;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@AllArgsConstructor
+@Data
+public class CursorPage<T> {
+  private List<T> items;
+
+  // Opaque cursor for the following page, null on the last page
+  private String next;
+}
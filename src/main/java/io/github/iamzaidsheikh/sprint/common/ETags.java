@@ -0,0 +1,30 @@
+package io.github.iamzaidsheikh.sprint.common;
+
+import java.time.Instant;
+
+// Strong validators for versioned entities. The version moves on every write,
+// the timestamp keeps tags distinct across a collection that was recreated.
+public final class ETags {
+
+  private ETags() {
+  }
+
+  public static String of(Long version, Instant lastModified) {
+    return of(version, lastModified, null);
+  }
+
+  // Representations selected by request parameters get tags of their own
+  public static String of(Long version, Instant lastModified, String variant) {
+    var millis = lastModified == null ? 0 : lastModified.toEpochMilli();
+    var tag = (version == null ? 0 : version) + "-" + Long.toString(millis, 36);
+    if (variant != null) {
+      tag += "-" + Integer.toHexString(variant.hashCode());
+    }
+    return "\"" + tag + "\"";
+  }
+
+  public static String of(Stamped stamped, String variant) {
+    return of(stamped.getVersion(), stamped.getLastModified(), variant);
+  }
+
+}
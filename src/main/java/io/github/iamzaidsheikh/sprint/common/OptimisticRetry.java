@@ -0,0 +1,73 @@
+package io.github.iamzaidsheikh.sprint.common;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+// Re-runs an operation that lost an optimistic locking race. The operation is
+// expected to re-read the document, so every attempt works on fresh state.
+@Slf4j
+@Component
+public class OptimisticRetry {
+
+  private final MeterRegistry registry;
+  private final int maxAttempts;
+  private final long initialBackoff;
+  private final long maxBackoff;
+
+  public OptimisticRetry(MeterRegistry registry,
+      @Value("${sprint.retry.max-attempts:4}") int maxAttempts,
+      @Value("${sprint.retry.initial-backoff:10ms}") Duration initialBackoff,
+      @Value("${sprint.retry.max-backoff:200ms}") Duration maxBackoff) {
+    this.registry = registry;
+    this.maxAttempts = maxAttempts;
+    this.initialBackoff = initialBackoff.toMillis();
+    this.maxBackoff = maxBackoff.toMillis();
+  }
+
+  public <T> T run(String operation, Supplier<T> action) {
+    var backoff = initialBackoff;
+    for (int attempt = 1;; attempt++) {
+      try {
+        return action.get();
+      } catch (OptimisticLockingFailureException e) {
+        if (attempt >= maxAttempts) {
+          registry.counter("sprint.retry.exhausted", "operation", operation).increment();
+          log.error("Giving up on: {} after {} attempts", operation, attempt);
+          throw e;
+        }
+        registry.counter("sprint.retry.attempts", "operation", operation).increment();
+        log.warn("Retrying: {} after conflict. {}", operation, e.getMessage());
+        pause(backoff, e);
+        backoff = Math.min(backoff * 2, maxBackoff);
+      }
+    }
+  }
+
+  public void run(String operation, Runnable action) {
+    run(operation, () -> {
+      action.run();
+      return null;
+    });
+  }
+
+  // Full jitter keeps competing writers from retrying in lockstep
+  private void pause(long backoff, OptimisticLockingFailureException cause) {
+    if (backoff <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(backoff + 1));
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw cause;
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package io.github.iamzaidsheikh.sprint.common;
+
+import java.time.Instant;
+
+// Entities whose representation changes only together with their version
+public interface Stamped {
+  Long getVersion();
+
+  Instant getLastModified();
+}
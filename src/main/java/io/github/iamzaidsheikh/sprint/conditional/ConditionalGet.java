@@ -0,0 +1,16 @@
+package io.github.iamzaidsheikh.sprint.conditional;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marks a GET handler whose response is fully determined by the stamp the
+// given source finds for the request's path variables
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ConditionalGet {
+  Class<? extends StampSource> value();
+}
@@ -0,0 +1,19 @@
+package io.github.iamzaidsheikh.sprint.conditional;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+@Configuration
+public class ConditionalGetConfig implements WebMvcConfigurer {
+
+  private final ConditionalGetInterceptor interceptor;
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(interceptor).addPathPatterns("/api/v1/**");
+  }
+}
@@ -0,0 +1,56 @@
+package io.github.iamzaidsheikh.sprint.conditional;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.github.iamzaidsheikh.sprint.common.ETags;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Sets ETag and Last-Modified on @ConditionalGet handlers from the resource's
+// stamp and answers a matching If-None-Match / If-Modified-Since with 304
+// before the handler loads anything. The stamp is read before the body, so a
+// concurrent write can only make the tag older than the body, never newer,
+// provided the source keeps any cache the body comes from up to its stamp.
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class ConditionalGetInterceptor implements HandlerInterceptor {
+
+  private final ApplicationContext ctx;
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+    if (!HttpMethod.GET.matches(request.getMethod()) || !(handler instanceof HandlerMethod)) {
+      return true;
+    }
+    var conditional = ((HandlerMethod) handler).getMethodAnnotation(ConditionalGet.class);
+    if (conditional == null) {
+      return true;
+    }
+    @SuppressWarnings("unchecked")
+    var pathVariables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+    var stamp = ctx.getBean(conditional.value()).find(pathVariables);
+    if (stamp.isEmpty()) {
+      // Let the handler report the missing resource
+      return true;
+    }
+    var etag = ETags.of(stamp.get(), request.getQueryString());
+    var lastModified = stamp.get().getLastModified() == null ? -1 : stamp.get().getLastModified().toEpochMilli();
+    if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+      log.debug("Not modified: {}", request.getRequestURI());
+      return false;
+    }
+    return true;
+  }
+}
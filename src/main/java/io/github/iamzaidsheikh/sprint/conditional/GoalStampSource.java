@@ -0,0 +1,31 @@
+package io.github.iamzaidsheikh.sprint.conditional;
+
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.stereotype.Component;
+
+import io.github.iamzaidsheikh.sprint.common.Stamped;
+import io.github.iamzaidsheikh.sprint.goal.repo.GoalCache;
+import io.github.iamzaidsheikh.sprint.goal.repo.GoalRepo;
+import lombok.RequiredArgsConstructor;
+
+// Every goal and task write moves the goal's version, so the goal stamp
+// covers the goal, its tasks and their submissions. Bodies are served from
+// GoalCache, which can miss writes made elsewhere; a cached goal behind the
+// stamp is evicted here, so the body read next is never older than the tag.
+@RequiredArgsConstructor
+@Component
+public class GoalStampSource implements StampSource {
+
+  private final GoalRepo gr;
+  private final GoalCache cache;
+
+  @Override
+  public Optional<? extends Stamped> find(Map<String, String> pathVariables) {
+    var goalId = pathVariables.get("goalId");
+    var stamp = gr.findStampById(goalId);
+    stamp.ifPresent(s -> cache.evictIfOlder(goalId, s));
+    return stamp;
+  }
+}
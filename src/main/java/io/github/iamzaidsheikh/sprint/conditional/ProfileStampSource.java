@@ -0,0 +1,23 @@
+package io.github.iamzaidsheikh.sprint.conditional;
+
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.stereotype.Component;
+
+import io.github.iamzaidsheikh.sprint.common.Stamped;
+import io.github.iamzaidsheikh.sprint.profile.repo.ProfileCache;
+import lombok.RequiredArgsConstructor;
+
+// Profiles are cached whole, so their stamp comes from the cache
+@RequiredArgsConstructor
+@Component
+public class ProfileStampSource implements StampSource {
+
+  private final ProfileCache pc;
+
+  @Override
+  public Optional<? extends Stamped> find(Map<String, String> pathVariables) {
+    return pc.find(pathVariables.get("username"));
+  }
+}
@@ -0,0 +1,11 @@
+package io.github.iamzaidsheikh.sprint.conditional;
+
+import java.util.Map;
+import java.util.Optional;
+
+import io.github.iamzaidsheikh.sprint.common.Stamped;
+
+// Looks up the current stamp of a resource without loading the resource
+public interface StampSource {
+  Optional<? extends Stamped> find(Map<String, String> pathVariables);
+}
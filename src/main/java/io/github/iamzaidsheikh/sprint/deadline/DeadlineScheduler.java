@@ -0,0 +1,200 @@
+package io.github.iamzaidsheikh.sprint.deadline;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.goal.model.GoalStatus;
+import io.github.iamzaidsheikh.sprint.goal.repo.GoalCache;
+import io.github.iamzaidsheikh.sprint.task.repo.TaskStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+// Marks goals and tasks OVERDUE once their deadline passes. Only deadlines
+// within the horizon are held in memory, ordered by time, and the window is
+// slid forward with an indexed range query on the deadline once half of it
+// has elapsed. Writers schedule the deadlines they set, and every timer
+// fires a conditional update, so a stale timer left behind by an extended
+// deadline or a completed goal matches nothing.
+@Slf4j
+@Component
+public class DeadlineScheduler {
+
+  enum Kind {
+    GOAL,
+    TASKS
+  }
+
+  record Timer(Instant at, Kind kind, String goalId) {
+  }
+
+  private static final Comparator<Timer> ORDER = Comparator.comparing(Timer::at)
+      .thenComparing(Timer::kind)
+      .thenComparing(Timer::goalId);
+
+  private final MongoTemplate mt;
+  private final TaskStore store;
+  private final GoalCache cache;
+  private final MeterRegistry registry;
+  private final Duration window;
+  private final int batchSize;
+  private final ConcurrentSkipListSet<Timer> timers = new ConcurrentSkipListSet<>(ORDER);
+  // Deadlines before this are all held as timers
+  private volatile Instant horizon = Instant.MIN;
+  // Writers schedule deadlines before this, which runs ahead of the horizon
+  // while a window is loading
+  private volatile Instant scheduling = Instant.MIN;
+
+  public DeadlineScheduler(MongoTemplate mt, TaskStore store, GoalCache cache, MeterRegistry registry,
+      @Value("${sprint.deadlines.horizon:1h}") Duration window,
+      @Value("${sprint.deadlines.batch-size:500}") int batchSize) {
+    this.mt = mt;
+    this.store = store;
+    this.cache = cache;
+    this.registry = registry;
+    this.window = window;
+    this.batchSize = batchSize;
+    Gauge.builder("sprint.deadlines.pending", timers, ConcurrentSkipListSet::size)
+        .description("Deadlines held in memory waiting to pass")
+        .register(registry);
+  }
+
+  @PostConstruct
+  void ensureIndexes() {
+    mt.indexOps(Goal.class).ensureIndex(new Index().on("status", Sort.Direction.ASC)
+        .on("deadline", Sort.Direction.ASC));
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onReady() {
+    load(Instant.now());
+  }
+
+  public void scheduleGoal(String goalId, Instant deadline) {
+    schedule(new Timer(deadline, Kind.GOAL, goalId));
+  }
+
+  public void scheduleTasks(String goalId, Instant deadline) {
+    schedule(new Timer(deadline, Kind.TASKS, goalId));
+  }
+
+  // Deadlines past the horizon are picked up when the window gets there
+  private void schedule(Timer timer) {
+    if (timer.at().isBefore(scheduling)) {
+      timers.add(timer);
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${sprint.deadlines.tick:1000}")
+  public void tick() {
+    var now = Instant.now();
+    try {
+      if (now.plus(window.dividedBy(2)).isAfter(horizon)) {
+        load(now);
+      }
+      while (fire(now) == batchSize) {
+        // Keep going while there are more due timers
+      }
+    } catch (RuntimeException e) {
+      // Timers that did not fire were put back and are retried on the next tick
+      registry.counter("sprint.deadlines.failures").increment();
+      log.error("Could not mark overdue goals and tasks", e);
+    }
+  }
+
+  // Writers start scheduling up to the new bound before the queries run, so a
+  // deadline written meanwhile is either found by the query or scheduled by
+  // its writer. The horizon only moves once both queries succeed; after a
+  // failure the next tick loads the same window again, and timers it finds
+  // twice are deduplicated by the set.
+  synchronized void load(Instant now) {
+    var from = horizon;
+    var to = now.plus(window);
+    scheduling = to;
+    try {
+      var deadline = Criteria.where("deadline").lt(to);
+      if (!from.equals(Instant.MIN)) {
+        deadline.gte(from);
+      }
+      var query = Query.query(Criteria.where("status").is(GoalStatus.IN_PROGRESS)).addCriteria(deadline);
+      query.fields().include("id", "deadline");
+      var goals = mt.find(query, Goal.class);
+      goals.forEach(g -> timers.add(new Timer(g.getDeadline(), Kind.GOAL, g.getId())));
+      // Tasks are few per goal and only NEW ones are returned, so their window
+      // is not bounded below; timers already held are deduplicated by the set
+      var tasks = store.findDue(to);
+      tasks.forEach(t -> timers.add(new Timer(t.getDeadline(), Kind.TASKS, t.getGoalId())));
+      horizon = to;
+      log.info("Loaded {} goal and {} task deadlines before: {}", goals.size(), tasks.size(), to);
+    } catch (RuntimeException e) {
+      scheduling = from;
+      throw e;
+    }
+  }
+
+  int fire(Instant now) {
+    var due = new ArrayList<Timer>();
+    Timer timer;
+    while (due.size() < batchSize && (timer = timers.pollFirst()) != null) {
+      if (timer.at().isAfter(now)) {
+        timers.add(timer);
+        break;
+      }
+      due.add(timer);
+    }
+    if (due.isEmpty()) {
+      return 0;
+    }
+    var goalIds = new HashSet<String>();
+    var taskGoalIds = new HashSet<String>();
+    due.forEach(t -> (t.kind() == Kind.GOAL ? goalIds : taskGoalIds).add(t.goalId()));
+    try {
+      var overdue = markGoalsOverdue(goalIds, now);
+      if (!taskGoalIds.isEmpty()) {
+        store.markOverdue(taskGoalIds, now);
+      }
+      registry.counter("sprint.deadlines.goals.overdue").increment(overdue);
+    } catch (RuntimeException e) {
+      timers.addAll(due);
+      throw e;
+    }
+    goalIds.forEach(cache::evict);
+    taskGoalIds.forEach(cache::evict);
+    log.info("Checked deadlines of {} goals and tasks of {} goals", goalIds.size(), taskGoalIds.size());
+    return due.size();
+  }
+
+  private long markGoalsOverdue(Collection<String> goalIds, Instant now) {
+    if (goalIds.isEmpty()) {
+      return 0;
+    }
+    var query = Query.query(Criteria.where("id").in(goalIds)
+        .and("status").is(GoalStatus.IN_PROGRESS)
+        .and("deadline").lte(now));
+    var update = new Update().set("status", GoalStatus.OVERDUE)
+        .set("lastModified", now)
+        .inc("version", 1);
+    return mt.updateMulti(query, update, Goal.class).getModifiedCount();
+  }
+
+}
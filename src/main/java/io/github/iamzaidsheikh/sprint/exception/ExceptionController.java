@@ -2,6 +2,7 @@ package io.github.iamzaidsheikh.sprint.exception;
 
 import java.util.List;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -31,6 +32,12 @@ public class ExceptionController {
     return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
   }
 
+  @ExceptionHandler(value = OptimisticLockingFailureException.class)
+  public ResponseEntity<Error> exception(OptimisticLockingFailureException e) {
+    var error = new Error(HttpStatus.CONFLICT, e.getMessage());
+    return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+  }
+
   @ExceptionHandler(MethodArgumentNotValidException.class)
   public ResponseEntity<?> methodArgumentNotValidException(MethodArgumentNotValidException ex) {
     BindingResult result = ex.getBindingResult();
@@ -0,0 +1,16 @@
+package io.github.iamzaidsheikh.sprint.goal.event;
+
+import java.util.Set;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Published once a goal document is gone so its copies can be cleaned up
+@AllArgsConstructor
+@Data
+public class GoalDeletedEvent {
+  private String goalId;
+
+  // Author and mentors whose profiles may still list the goal
+  private Set<String> usernames;
+}
@@ -0,0 +1,13 @@
+package io.github.iamzaidsheikh.sprint.goal.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Published once a mentor is off a goal, which no longer names them
+@AllArgsConstructor
+@Data
+public class MentorLeftEvent {
+  private String goalId;
+
+  private String username;
+}
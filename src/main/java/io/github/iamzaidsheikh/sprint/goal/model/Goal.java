@@ -5,11 +5,15 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import io.github.iamzaidsheikh.sprint.common.BaseEntity;
+import io.github.iamzaidsheikh.sprint.common.Stamped;
 import io.github.iamzaidsheikh.sprint.task.model.Task;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -17,7 +21,7 @@ import lombok.EqualsAndHashCode;
 @EqualsAndHashCode(callSuper = false)
 @Data
 @Document
-public class Goal extends BaseEntity {
+public class Goal extends BaseEntity implements Stamped {
 
   @Id
   private String id;
@@ -38,12 +42,23 @@ public class Goal extends BaseEntity {
 
   private GoalStatus status;
 
+  // Empty mentor slots, kept so open goals can be found with a partial index
+  @Field(name = "open_slots")
+  private int openSlots;
+
   @Indexed(unique = true)
   @Field(name = "inv_code")
   private String invCode;
 
   private List<Task> tasks;
 
+  // Profile changes not yet relayed, never part of the API representation
+  @JsonIgnore
+  private List<OutboxEntry> outbox;
+
+  @Version
+  private Long version;
+
   public Goal(String author, Instant deadline, String title, String desc) {
     this.author = author;
     this.deadline = deadline;
@@ -52,6 +67,7 @@ public class Goal extends BaseEntity {
     this.status = GoalStatus.IN_PROGRESS;
     this.mentor1 = null;
     this.mentor2 = null;
+    this.openSlots = 2;
     this.invCode = null;
     this.tasks = new ArrayList<>();
   }
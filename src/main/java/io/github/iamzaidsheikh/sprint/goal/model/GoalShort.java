@@ -10,4 +10,7 @@ public class GoalShort {
     private String title;
     private String desc;
     private String author;
+
+    // Set once the goal's completion has been counted on this profile
+    private boolean completed;
 }
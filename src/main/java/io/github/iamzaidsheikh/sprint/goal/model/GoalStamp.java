@@ -0,0 +1,7 @@
+package io.github.iamzaidsheikh.sprint.goal.model;
+
+import io.github.iamzaidsheikh.sprint.common.Stamped;
+
+// Closed projection of only the fields that validate a conditional request
+public interface GoalStamp extends Stamped {
+}
@@ -2,5 +2,6 @@ package io.github.iamzaidsheikh.sprint.goal.model;
 
 public enum GoalStatus {
     IN_PROGRESS,
+    OVERDUE,
     COMPLETED
 }
@@ -0,0 +1,26 @@
+package io.github.iamzaidsheikh.sprint.goal.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+// Closed projection of a goal without its tasks, used wherever only the
+// goal's participants and state are needed
+public interface GoalSummary {
+  String getId();
+
+  String getTitle();
+
+  String getAuthor();
+
+  String getMentor1();
+
+  String getMentor2();
+
+  GoalStatus getStatus();
+
+  Instant getDeadline();
+
+  @JsonIgnore
+  String getInvCode();
+}
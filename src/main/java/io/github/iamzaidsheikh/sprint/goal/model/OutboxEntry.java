@@ -0,0 +1,30 @@
+package io.github.iamzaidsheikh.sprint.goal.model;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Pending profile change, written in the same update as the goal change it
+// follows from and removed once the relay has applied it
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class OutboxEntry {
+  @Field(name = "event_id")
+  private String eventId;
+
+  private OutboxType type;
+
+  private String username;
+
+  private Instant at;
+
+  public static OutboxEntry of(OutboxType type, String username) {
+    return new OutboxEntry(UUID.randomUUID().toString(), type, username, Instant.now());
+  }
+}
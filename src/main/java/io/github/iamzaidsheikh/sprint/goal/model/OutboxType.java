@@ -0,0 +1,9 @@
+package io.github.iamzaidsheikh.sprint.goal.model;
+
+// Profile read model changes that follow from a goal write
+public enum OutboxType {
+  ADD_GOAL,
+  ADD_MENTORED,
+  REMOVE_MENTORED,
+  COMPLETED
+}
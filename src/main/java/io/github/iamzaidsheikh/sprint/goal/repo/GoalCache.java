@@ -0,0 +1,97 @@
+package io.github.iamzaidsheikh.sprint.goal.repo;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.github.iamzaidsheikh.sprint.common.Stamped;
+import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.goal.model.GoalSummary;
+import io.github.iamzaidsheikh.sprint.threads.ExecutionMode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+// Read-through cache of goal documents for request paths that only read.
+// Entries are kept as raw documents and mapped on every hit, so callers get
+// their own instance. Writers must evict the goal once their write is done;
+// precondition checks that explain a failed write should keep reading Mongo.
+@Component
+public class GoalCache {
+
+  private final MongoTemplate mt;
+  private final AsyncCache<String, Document> cache;
+  private final Executor loader;
+  private final SpelAwareProxyProjectionFactory pf = new SpelAwareProxyProjectionFactory();
+
+  public GoalCache(MongoTemplate mt, MeterRegistry registry, ExecutionMode mode,
+      @Value("${sprint.cache.goals.max-size:10000}") long maxSize,
+      @Value("${sprint.cache.goals.ttl:5m}") Duration ttl) {
+    this.mt = mt;
+    this.loader = mode.loader();
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(ttl)
+        .recordStats()
+        .buildAsync();
+    CaffeineCacheMetrics.monitor(registry, cache.synchronous(), "goals");
+  }
+
+  public Optional<Goal> find(String goalId, boolean includeTasks) {
+    var doc = ExecutionMode.await(cache.get(goalId,
+        (id, executor) -> CompletableFuture.supplyAsync(() -> load(id), loader)));
+    if (doc == null) {
+      return Optional.empty();
+    }
+    if (!includeTasks) {
+      doc = new Document(doc);
+      doc.remove("tasks");
+    }
+    return Optional.of(mt.getConverter().read(Goal.class, doc));
+  }
+
+  public Optional<GoalSummary> findSummary(String goalId) {
+    return find(goalId, false).map(goal -> pf.createProjection(GoalSummary.class, goal));
+  }
+
+  // A load of the same goal that is in flight is dropped rather than stored,
+  // so a value read before the write cannot be left behind
+  public void evict(String goalId) {
+    cache.synchronous().invalidate(goalId);
+  }
+
+  // Drops an entry that is behind the stamp just read from Mongo, as after a
+  // write by another instance or a bulk job that could not evict it here
+  public void evictIfOlder(String goalId, Stamped current) {
+    var entry = cache.getIfPresent(goalId);
+    if (entry == null || !entry.isDone() || entry.isCompletedExceptionally()) {
+      return;
+    }
+    var doc = entry.join();
+    var version = doc == null ? null : doc.get("version", Number.class);
+    if (version == null || current.getVersion() == null || version.longValue() != current.getVersion()) {
+      evict(goalId);
+    }
+  }
+
+  private Document load(String goalId) {
+    if (!ObjectId.isValid(goalId)) {
+      return null;
+    }
+    var query = Query.query(Criteria.where("_id").is(new ObjectId(goalId)));
+    return mt.findOne(query, Document.class, mt.getCollectionName(Goal.class));
+  }
+
+}
@@ -1,11 +1,41 @@
 package io.github.iamzaidsheikh.sprint.goal.repo;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
 import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.goal.model.GoalStamp;
+import io.github.iamzaidsheikh.sprint.goal.model.GoalStatus;
+import io.github.iamzaidsheikh.sprint.goal.model.GoalSummary;
 
 public interface GoalRepo extends MongoRepository<Goal, String>{
-  List<Goal> findByInvCode(String invCode);
+  List<GoalSummary> findSummaryByInvCode(String invCode);
+
+  Optional<GoalSummary> findSummaryById(String id);
+
+  List<GoalSummary> findSummaryByIdIn(Collection<String> ids);
+
+  Optional<GoalStamp> findStampById(String id);
+
+  List<Goal> findAllBy(Pageable pageable);
+
+  List<Goal> findByIdGreaterThan(ObjectId id, Pageable pageable);
+
+  // Served by the (author, status, deadline) index, already in deadline order
+  @Query(value = "{ 'author': ?0, 'status': ?1, 'deadline': { '$gte': ?2, '$lt': ?3 } }",
+      sort = "{ 'deadline': 1 }", fields = "{ 'outbox': 0 }")
+  List<Goal> findDueByAuthor(String username, GoalStatus status, Instant from, Instant to);
+
+  // Each branch uses the index of its mentor field and the two are merged in
+  // deadline order
+  @Query(value = "{ '$or': [ { 'mentor1': ?0 }, { 'mentor2': ?0 } ], 'status': ?1, 'deadline': { '$gte': ?2, '$lt': ?3 } }",
+      sort = "{ 'deadline': 1 }", fields = "{ 'outbox': 0 }")
+  List<Goal> findDueByMentor(String username, GoalStatus status, Instant from, Instant to);
 }
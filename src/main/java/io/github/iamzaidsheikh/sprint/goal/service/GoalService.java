@@ -1,17 +1,54 @@
 package io.github.iamzaidsheikh.sprint.goal.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
 
 import org.apache.commons.lang3.RandomStringUtils;
+import org.bson.types.ObjectId;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition.TextIndexDefinitionBuilder;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.iamzaidsheikh.sprint.common.CursorCodec;
+import io.github.iamzaidsheikh.sprint.common.CursorPage;
+import io.github.iamzaidsheikh.sprint.common.OptimisticRetry;
+import io.github.iamzaidsheikh.sprint.deadline.DeadlineScheduler;
 import io.github.iamzaidsheikh.sprint.exception.BadRequestException;
 import io.github.iamzaidsheikh.sprint.exception.ResourceNotFoundException;
 import io.github.iamzaidsheikh.sprint.goal.dto.GoalDTO;
+import io.github.iamzaidsheikh.sprint.goal.event.GoalDeletedEvent;
+import io.github.iamzaidsheikh.sprint.goal.event.MentorLeftEvent;
 import io.github.iamzaidsheikh.sprint.goal.model.Goal;
 import io.github.iamzaidsheikh.sprint.goal.model.GoalStatus;
+import io.github.iamzaidsheikh.sprint.goal.model.GoalSummary;
+import io.github.iamzaidsheikh.sprint.goal.model.OutboxEntry;
+import io.github.iamzaidsheikh.sprint.goal.model.OutboxType;
+import io.github.iamzaidsheikh.sprint.goal.repo.GoalCache;
 import io.github.iamzaidsheikh.sprint.goal.repo.GoalRepo;
+import io.github.iamzaidsheikh.sprint.task.repo.TaskStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -20,25 +57,208 @@ import lombok.extern.slf4j.Slf4j;
 @Service
 public class GoalService implements IGoalService {
 
+  public static final int MAX_PAGE_SIZE = 100;
+  public static final int MAX_DUE_DAYS = 30;
+  private static final int EXPORT_BATCH_SIZE = 500;
+
   private final GoalRepo gr;
+  private final MongoTemplate mt;
+  private final ObjectMapper om;
+  private final OptimisticRetry retry;
+  private final TaskStore store;
+  private final GoalCache cache;
+  private final ApplicationEventPublisher publisher;
+  private final DeadlineScheduler deadlines;
+
+  // Equality fields first and the deadline last, so each role's range query
+  // is answered in deadline order straight from its index
+  @PostConstruct
+  void ensureIndexes() {
+    var indexOps = mt.indexOps(Goal.class);
+    for (var role : List.of("author", "mentor1", "mentor2")) {
+      indexOps.ensureIndex(new Index().on(role, Sort.Direction.ASC)
+          .on("status", Sort.Direction.ASC)
+          .on("deadline", Sort.Direction.ASC));
+    }
+    // Only in progress goals with a free mentor slot are indexed, so the open
+    // goals feed reads nothing else
+    indexOps.ensureIndex(new Index().on("deadline", Sort.Direction.ASC)
+        .on("id", Sort.Direction.ASC)
+        .partial(PartialIndexFilter.of(isOpen()))
+        .named("open_goals"));
+    // A collection has at most one text index; title matches weigh more
+    indexOps.ensureIndex(new TextIndexDefinitionBuilder()
+        .onField("title", 2F)
+        .onField("desc")
+        .named("goal_text")
+        .build());
+  }
 
   @Override
-  public List<Goal> getAllGoals() {
-    log.info("Fetching all goals");
+  public CursorPage<Goal> getAllGoals(String cursor, int limit) {
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      log.error("Invalid page size: {}", limit);
+      throw new BadRequestException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+    }
+    // Fetch one extra goal to find out whether there is a next page
+    var page = PageRequest.of(0, limit + 1, Sort.by("id"));
+    List<Goal> goals;
+    if (cursor == null) {
+      log.info("Fetching first page of goals");
+      goals = gr.findAllBy(page);
+    } else {
+      var lastId = CursorCodec.decode(cursor, 1)[0];
+      if (!ObjectId.isValid(lastId)) {
+        log.error("Invalid cursor: {}", cursor);
+        throw new BadRequestException("Invalid cursor: " + cursor);
+      }
+      log.info("Fetching goals after: {}", lastId);
+      goals = gr.findByIdGreaterThan(new ObjectId(lastId), page);
+    }
+    if (goals.size() <= limit) {
+      return new CursorPage<>(goals, null);
+    }
+    goals = goals.subList(0, limit);
+    return new CursorPage<>(goals, CursorCodec.encode(goals.get(limit - 1).getId()));
+  }
 
-    return gr.findAll();
+  @Override
+  public long exportGoals(GoalStatus status, Instant from, Instant to, OutputStream out) throws IOException {
+    var query = new Query().cursorBatchSize(EXPORT_BATCH_SIZE);
+    if (status != null) {
+      query.addCriteria(Criteria.where("status").is(status));
+    }
+    if (from != null || to != null) {
+      var createdAt = Criteria.where("createdAt");
+      if (from != null) {
+        createdAt.gte(from);
+      }
+      if (to != null) {
+        createdAt.lt(to);
+      }
+      query.addCriteria(createdAt);
+    }
+    log.info("Exporting goals with status: {} created between: {} and {}", status, from, to);
+    long exported = 0;
+    try (var goals = mt.stream(query, Goal.class)) {
+      while (goals.hasNext()) {
+        out.write(om.writeValueAsBytes(goals.next()));
+        out.write('\n');
+        // Flush the first line right away, then once per cursor batch
+        if (exported++ % EXPORT_BATCH_SIZE == 0) {
+          out.flush();
+        }
+      }
+    }
+    out.flush();
+    log.info("Exported {} goals", exported);
+    return exported;
   }
 
   @Override
-  public Goal getGoal(String goalId) {
+  public Goal getGoal(String goalId, boolean includeTasks) {
     log.info("Fetching goal: {}", goalId);
-    var go = gr.findById(goalId);
-    if (!go.isPresent()) {
+    var go = cache.find(goalId, includeTasks && store.storesTasksOnGoal());
+    if (go.isEmpty()) {
+      log.error("Could not find goal: {}", goalId);
+      throw new ResourceNotFoundException("Could not find goal: " + goalId);
+    }
+    var goal = go.get();
+    if (!includeTasks) {
+      goal.setTasks(null);
+    } else if (!store.storesTasksOnGoal()) {
+      goal.setTasks(store.findByGoal(goalId));
+    }
+    return goal;
+  }
+
+  @Override
+  public GoalSummary getGoalSummary(String goalId) {
+    log.info("Fetching summary of goal: {}", goalId);
+    var go = cache.findSummary(goalId);
+    if (go.isEmpty()) {
       log.error("Could not find goal: {}", goalId);
       throw new ResourceNotFoundException("Could not find goal: " + goalId);
+    }
+    return go.get();
+  }
+
+  @Override
+  public CursorPage<Goal> getOpenGoals(String cursor, int limit) {
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      log.error("Invalid page size: {}", limit);
+      throw new BadRequestException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+    }
+    // Fetch one extra goal to find out whether there is a next page
+    var query = Query.query(isOpen())
+        .with(Sort.by("deadline", "id"))
+        .limit(limit + 1);
+    query.fields().exclude("tasks", "outbox");
+    if (cursor == null) {
+      log.info("Fetching first page of open goals");
     } else {
-      return go.get();
+      var parts = CursorCodec.decode(cursor, 2);
+      if (!parts[0].matches("-?\\d+") || !ObjectId.isValid(parts[1])) {
+        log.error("Invalid cursor: {}", cursor);
+        throw new BadRequestException("Invalid cursor: " + cursor);
+      }
+      var deadline = Instant.ofEpochMilli(Long.parseLong(parts[0]));
+      log.info("Fetching open goals after: {}", parts[1]);
+      // The lower bound keeps the index scan short, the $or breaks deadline ties
+      query.addCriteria(Criteria.where("deadline").gte(deadline))
+          .addCriteria(new Criteria().orOperator(
+              Criteria.where("deadline").gt(deadline),
+              Criteria.where("id").gt(new ObjectId(parts[1]))));
+    }
+    var goals = mt.find(query, Goal.class);
+    if (goals.size() <= limit) {
+      return new CursorPage<>(goals, null);
+    }
+    goals = goals.subList(0, limit);
+    var last = goals.get(limit - 1);
+    return new CursorPage<>(goals, CursorCodec.encode(String.valueOf(last.getDeadline().toEpochMilli()), last.getId()));
+  }
+
+  // Relevance order cannot be resumed from a cursor, so search pages by offset
+  @Override
+  public List<Goal> searchGoals(String text, int offset, int limit) {
+    if (text == null || text.isBlank()) {
+      log.error("Empty search text");
+      throw new BadRequestException("Search text must not be empty");
+    }
+    if (offset < 0 || limit < 1 || limit > MAX_PAGE_SIZE) {
+      log.error("Invalid offset: {} or limit: {}", offset, limit);
+      throw new BadRequestException("Offset must not be negative and limit must be between 1 and " + MAX_PAGE_SIZE);
+    }
+    var query = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(text))
+        .sortByScore()
+        .skip(offset)
+        .limit(limit);
+    // The score is projected for the sort, which an exclusion projection
+    // does not allow, so the fields to return are listed instead
+    query.fields().include("author", "mentor1", "mentor2", "deadline", "title", "desc", "status", "invCode",
+        "openSlots", "createdAt", "lastModified", "version");
+    log.info("Searching goals for: {}", text);
+    return mt.find(query, Goal.class);
+  }
+
+  @Override
+  public List<Goal> getDueSoon(String username, int days) {
+    if (days < 1 || days > MAX_DUE_DAYS) {
+      log.error("Invalid due soon window: {}", days);
+      throw new BadRequestException("Days must be between 1 and " + MAX_DUE_DAYS);
     }
+    var now = Instant.now();
+    var to = now.plus(Duration.ofDays(days));
+    log.info("Fetching goals of user: {} due before: {}", username, to);
+    var goals = new ArrayList<Goal>(gr.findDueByAuthor(username, GoalStatus.IN_PROGRESS, now, to));
+    goals.addAll(gr.findDueByMentor(username, GoalStatus.IN_PROGRESS, now, to));
+    goals.sort(Comparator.comparing(Goal::getDeadline));
+    if (!store.storesTasksOnGoal() && !goals.isEmpty()) {
+      var tasks = store.findByGoals(goals.stream().map(Goal::getId).collect(Collectors.toList()));
+      goals.forEach(goal -> goal.setTasks(tasks.getOrDefault(goal.getId(), List.of())));
+    }
+    return goals;
   }
 
   @Override
@@ -48,7 +268,10 @@ public class GoalService implements IGoalService {
         Instant.parse(data.getDeadline()),
         data.getTitle(),
         data.getDesc());
+    // Inserted with the goal, the relay adds it to the author's profile
+    goal.setOutbox(List.of(OutboxEntry.of(OutboxType.ADD_GOAL, username)));
     var goalId = gr.save(goal).getId();
+    deadlines.scheduleGoal(goalId, goal.getDeadline());
 
     log.info("User: {} created a new goal: {}", username, goalId);
     return goalId;
@@ -56,46 +279,178 @@ public class GoalService implements IGoalService {
 
   @Override
   public String invite(String goalId, String username) {
-    var go = gr.findById(goalId);
-    if (!go.isPresent()) {
-      log.error("Could not find goal: {}", goalId);
-      throw new ResourceNotFoundException("Could not find goal: " + goalId);
+    var invCode = retry.run("goal.invite", () -> attemptInvite(goalId, username));
+    cache.evict(goalId);
+    return invCode;
+  }
+
+  private String attemptInvite(String goalId, String username) {
+    var invCode = RandomStringUtils.randomAlphanumeric(10);
+    var query = byId(goalId)
+        .addCriteria(Criteria.where("author").is(username))
+        .addCriteria(Criteria.where("status").ne(GoalStatus.COMPLETED))
+        .addCriteria(Criteria.where("invCode").is(null));
+    if (update(query, new Update().set("invCode", invCode))) {
+      log.info("Generated an invite code for goal: {}", goalId);
+
+      return invCode;
     }
-    var goal = go.get();
-    if (!goal.getAuthor().equals(username)) {
-      log.error("User: {} is not the author of goal: {}", username, goalId);
-      throw new BadRequestException("User: " + username + " is not the author of goal: " + goalId);
+    // Either a precondition failed or the goal already has an invite code
+    var goal = findSummary(goalId);
+    requireAuthor(goal, username);
+    requireNotCompleted(goal);
+    if (goal.getInvCode() == null) {
+      throw conflict(goalId);
     }
-    if (goal.getStatus().equals(GoalStatus.COMPLETED)) {
-      log.error("Goal: {} is already completed", goalId);
-      throw new BadRequestException("Goal: " + goalId + " is already completed");
+    log.info("Fetching invite code for goal: {}", goalId);
+
+    return goal.getInvCode();
+  }
+
+  @Override
+  public String join(String invCode, String username) {
+    var goalId = retry.run("goal.join", () -> attemptJoin(invCode, username));
+    cache.evict(goalId);
+    return goalId;
+  }
+
+  private String attemptJoin(String invCode, String username) {
+    var goal = joinAs("mentor1", "mentor2", invCode, username);
+    if (goal == null) {
+      goal = joinAs("mentor2", "mentor1", invCode, username);
     }
-    if (goal.getInvCode() == null) {
-      var invCode = RandomStringUtils.randomAlphanumeric(10);
-      goal.setInvCode(invCode);
-      log.info("Generating an invite code for goal: {}", goalId);
+    if (goal == null) {
+      throw explainJoinFailure(invCode, username);
+    }
+    var goalId = goal.getId();
+    log.info("User: {} added as a mentor for goal: {}", username, goalId);
 
-      return gr.save(goal).getInvCode();
-    } else {
-      log.info("Fetching invite code for goal: {}", goalId);
+    return goalId;
+  }
+
+  @Override
+  public String leaveGoal(String goalId, String username) {
+    retry.run("goal.leave", () -> attemptLeaveGoal(goalId, username));
+    cache.evict(goalId);
+    publisher.publishEvent(new MentorLeftEvent(goalId, username));
+    return goalId;
+  }
 
-      return goal.getInvCode();
+  private String attemptLeaveGoal(String goalId, String username) {
+    if (!leaveAs("mentor1", goalId, username) && !leaveAs("mentor2", goalId, username)) {
+      var goal = findSummary(goalId);
+      requireNotCompleted(goal);
+      requireMentor(goal, username);
+      throw conflict(goalId);
     }
+    log.info("User: {} is no longer a mentor of goal: {}", username, goalId);
+    return goalId;
   }
 
   @Override
-  public String join(String invCode, String username) {
-    var goals = gr.findByInvCode(invCode);
+  public void deleteGoal(String goalId, String username) {
+    retry.run("goal.delete", () -> attemptDeleteGoal(goalId, username));
+    cache.evict(goalId);
+  }
+
+  private void attemptDeleteGoal(String goalId, String username) {
+    var query = byId(goalId).addCriteria(Criteria.where("author").is(username));
+    query.fields().include("author", "mentor1", "mentor2");
+    var deleted = mt.findAndRemove(query, Goal.class);
+    if (deleted == null) {
+      requireAuthor(findSummary(goalId), username);
+      throw conflict(goalId);
+    }
+    store.deleteByGoal(goalId);
+    log.info("Deleted goal: {}", goalId);
+    // Profiles are cleaned up in the background, the goal is already gone
+    var usernames = Stream.of(deleted.getAuthor(), deleted.getMentor1(), deleted.getMentor2())
+        .filter(Objects::nonNull)
+        .collect(Collectors.toSet());
+    publisher.publishEvent(new GoalDeletedEvent(goalId, usernames));
+  }
+
+  @Override
+  public String extendDeadline(String goalId, String username, String newDeadline) {
+    retry.run("goal.extend", () -> attemptExtendDeadline(goalId, username, newDeadline));
+    cache.evict(goalId);
+    return goalId;
+  }
+
+  private String attemptExtendDeadline(String goalId, String username, String newDeadline) {
+    var updatedDealine = Instant.parse(newDeadline);
+    // An overdue goal is back in progress, until the new deadline passes
+    var query = byId(goalId)
+        .addCriteria(Criteria.where("status").ne(GoalStatus.COMPLETED))
+        .addCriteria(isMentor(username))
+        .addCriteria(Criteria.where("deadline").lte(updatedDealine));
+    var update = new Update().set("deadline", updatedDealine).set("status", GoalStatus.IN_PROGRESS);
+    if (!update(query, update)) {
+      var goal = findSummary(goalId);
+      requireNotCompleted(goal);
+      requireMentor(goal, username);
+      if (goal.getDeadline().isAfter(updatedDealine)) {
+        log.error("New deadline cannot be before previous deadline");
+        throw new BadRequestException("New deadline cannot be previous deadline");
+      }
+      throw conflict(goalId);
+    }
+    deadlines.scheduleGoal(goalId, updatedDealine);
+    log.info("Deadline extended for goal: {}", goalId);
+    return goalId;
+  }
+
+  @Override
+  public String completeGoal(String goalId, String username) {
+    retry.run("goal.complete", () -> attemptCompleteGoal(goalId, username));
+    cache.evict(goalId);
+    return goalId;
+  }
+
+  private String attemptCompleteGoal(String goalId, String username) {
+    var query = byId(goalId)
+        .addCriteria(isMentor(username))
+        .addCriteria(Criteria.where("status").ne(GoalStatus.COMPLETED));
+    // The relay counts the completion on the author's and mentors' profiles
+    var update = new Update().set("status", GoalStatus.COMPLETED)
+        .push("outbox", OutboxEntry.of(OutboxType.COMPLETED, username));
+    if (!update(query, update)) {
+      var goal = findSummary(goalId);
+      requireMentor(goal, username);
+      requireNotCompleted(goal);
+      throw conflict(goalId);
+    }
+    log.info("Goal: {} completed", goalId);
+    return goalId;
+  }
+
+  // openSlots is only moved on goals that have it, so a goal the backfill has
+  // not counted yet is never left with a count that disagrees with its mentors
+  private Goal joinAs(String slot, String otherSlot, String invCode, String username) {
+    var query = Query.query(Criteria.where("invCode").is(invCode))
+        .addCriteria(Criteria.where("status").ne(GoalStatus.COMPLETED))
+        .addCriteria(Criteria.where("author").ne(username))
+        .addCriteria(Criteria.where(slot).is(null))
+        .addCriteria(Criteria.where(otherSlot).ne(username))
+        .addCriteria(Criteria.where("openSlots").exists(true));
+    query.fields().include("id");
+    var update = new Update().set(slot, username)
+        .inc("openSlots", -1)
+        .push("outbox", OutboxEntry.of(OutboxType.ADD_MENTORED, username))
+        .set("lastModified", Instant.now())
+        .inc("version", 1);
+    return mt.findAndModify(query, update, Goal.class);
+  }
+
+  private RuntimeException explainJoinFailure(String invCode, String username) {
+    var goals = gr.findSummaryByInvCode(invCode);
     if (goals.isEmpty()) {
       log.error("Could not find goal with invite code: {}", invCode);
       throw new ResourceNotFoundException("Could not find goal with invite code: " + invCode);
     }
     var goal = goals.get(0);
     var goalId = goal.getId();
-    if (goal.getStatus().equals(GoalStatus.COMPLETED)) {
-      log.error("Goal: {} is already completed", goalId);
-      throw new BadRequestException("Goal: " + goalId + " is already completed");
-    }
+    requireNotCompleted(goal);
     if (goal.getAuthor().equals(username)) {
       log.error("Author: {} can't join goal: {} as a mentor", username, goalId);
       throw new BadRequestException("Author: " + username + " can't join a goal as a mentor");
@@ -107,106 +462,80 @@ public class GoalService implements IGoalService {
     if (username.equals(goal.getMentor1()) || username.equals(goal.getMentor2())) {
       log.error("User: {} is already a mentor for goal: {}", username, goalId);
       throw new BadRequestException("User: " + username + " is already a mentor for goal: " + goalId);
-    } else {
-      if (goal.getMentor1() == null && goal.getMentor2() != null) {
-        goal.setMentor1(username);
-      } else if (goal.getMentor1() != null && goal.getMentor2() == null) {
-        goal.setMentor2(username);
-      } else {
-        goal.setMentor1(username);
-      }
     }
-    log.info("User: {} added as a mentor for goal: {}", username, goalId);
-
-    return gr.save(goal).getId();
+    return conflict(goalId);
   }
 
-  @Override
-  public String leaveGoal(String goalId, String username) {
-    var go = gr.findById(goalId);
-    if (!go.isPresent()) {
-      log.error("Could not find goal: {}", goalId);
-      throw new ResourceNotFoundException("Could not find goal: " + goalId);
-    }
-    var goal = go.get();
-    if (goal.getStatus().equals(GoalStatus.COMPLETED)) {
-      log.error("Goal: {} is already completed", goalId);
-      throw new BadRequestException("Goal: " + goalId + " is already completed");
-    }
-    if (!username.equals(goal.getMentor1()) && !username.equals(goal.getMentor2())) {
-      log.error("User: {} is not a mentor of goal: {}", username, goalId);
-      throw new BadRequestException("User: " + username + " is not a mentor of goal: " + goalId);
-    }
-    if (username.equals(goal.getMentor1())) {
-      goal.setMentor1(null);
-    } else if (username.equals(goal.getMentor2())) {
-      goal.setMentor2(null);
-    }
-    log.info("User: {} is no longer a mentor of goal: {}", username, goalId);
-    return gr.save(goal).getId();
+  private boolean leaveAs(String slot, String goalId, String username) {
+    var query = byId(goalId)
+        .addCriteria(Criteria.where("status").ne(GoalStatus.COMPLETED))
+        .addCriteria(Criteria.where(slot).is(username))
+        .addCriteria(Criteria.where("openSlots").exists(true));
+    var update = new Update().unset(slot)
+        .inc("openSlots", 1)
+        .push("outbox", OutboxEntry.of(OutboxType.REMOVE_MENTORED, username));
+    return update(query, update);
   }
 
-  @Override
-  public void deleteGoal(String goalId, String username) {
-    var go = gr.findById(goalId);
-    if (!go.isPresent()) {
-      log.error("Could not find goal: {}", goalId);
-      throw new ResourceNotFoundException("Could not find goal: " + goalId);
-    }
-    var goal = go.get();
+  private void requireAuthor(GoalSummary goal, String username) {
     if (!goal.getAuthor().equals(username)) {
-      log.error("User: {} is not the author of goal: {}", username, goalId);
-      throw new BadRequestException("User: " + username + " is not the author of goal: " + goalId);
+      log.error("User: {} is not the author of goal: {}", username, goal.getId());
+      throw new BadRequestException("User: " + username + " is not the author of goal: " + goal.getId());
     }
-    // TODO: Async event to remove from profiles of author and mentors
-    log.info("Deleting goal: {}", goalId);
-    gr.delete(goal);
   }
 
-  @Override
-  public String extendDeadline(String goalId, String username, String newDeadline) {
-    var go = gr.findById(goalId);
-    if (!go.isPresent()) {
-      log.error("Could not find goal: {}", goalId);
-      throw new ResourceNotFoundException("Could not find goal: " + goalId);
-    }
-    var goal = go.get();
-    if (goal.getStatus().equals(GoalStatus.COMPLETED)) {
-      log.error("Goal: {} is already completed", goalId);
-      throw new BadRequestException("Goal: " + goalId + " is already completed");
-    }
+  private void requireMentor(GoalSummary goal, String username) {
     if (!username.equals(goal.getMentor1()) && !username.equals(goal.getMentor2())) {
-      log.error("User: {} is not a mentor of goal: {}", username, goalId);
-      throw new BadRequestException("User: " + username + " is not a mentor of goal: " + goalId);
+      log.error("User: {} is not a mentor of goal: {}", username, goal.getId());
+      throw new BadRequestException("User: " + username + " is not a mentor of goal: " + goal.getId());
     }
-    var updatedDealine = Instant.parse(newDeadline);
-    if (goal.getDeadline().isAfter(updatedDealine)) {
-      log.error("New deadline cannot be before previous deadline");
-      throw new BadRequestException("New deadline cannot be previous deadline");
+  }
+
+  private void requireNotCompleted(GoalSummary goal) {
+    if (goal.getStatus().equals(GoalStatus.COMPLETED)) {
+      log.error("Goal: {} is already completed", goal.getId());
+      throw new BadRequestException("Goal: " + goal.getId() + " is already completed");
     }
-    log.info("Deadline extended for goal: {}", goalId);
-    goal.setDeadline(updatedDealine);
-    return gr.save(goal).getId();
   }
 
-  @Override
-  public String completeGoal(String goalId, String username) {
-    var go = gr.findById(goalId);
-    if (!go.isPresent()) {
+  // None of the preconditions failed on re-read, so the goal changed between
+  // the conditional write and the re-read
+  private RuntimeException conflict(String goalId) {
+    log.error("Goal: {} was modified concurrently", goalId);
+    return new OptimisticLockingFailureException("Goal: " + goalId + " was modified concurrently");
+  }
+
+  private static Criteria isMentor(String username) {
+    return new Criteria().orOperator(
+        Criteria.where("mentor1").is(username),
+        Criteria.where("mentor2").is(username));
+  }
+
+  // Must match the filter of the open_goals partial index for it to be used
+  private static Criteria isOpen() {
+    return Criteria.where("status").is(GoalStatus.IN_PROGRESS).and("openSlots").gt(0);
+  }
+
+  private static Query byId(String goalId) {
+    return Query.query(Criteria.where("id").is(goalId));
+  }
+
+  private GoalSummary findSummary(String goalId) {
+    var go = gr.findSummaryById(goalId);
+    if (go.isEmpty()) {
       log.error("Could not find goal: {}", goalId);
       throw new ResourceNotFoundException("Could not find goal: " + goalId);
     }
-    var goal = go.get();
-    if (!username.equals(goal.getMentor1()) && !username.equals(goal.getMentor2())) {
-      log.error("User: {} is not a mentor of goal: {}", username, goalId);
-      throw new BadRequestException("User: " + username + " is not a mentor of goal: " + goalId);
-    }
-    if (goal.getStatus().equals(GoalStatus.COMPLETED)) {
-      log.error("Goal: {} is already completed", goalId);
-      throw new BadRequestException("Goal: " + goalId + " is already completed");
-    }
-    goal.setStatus(GoalStatus.COMPLETED);
-    return gr.save(goal).getId();
+    return go.get();
+  }
+
+  // Applies the update only if the goal still matches the query, in a single
+  // round trip. Partial updates bypass the before save listener and the
+  // version check, so stamp and bump the version here to make concurrent
+  // read-modify-save writers fail their optimistic lock.
+  private boolean update(Query query, Update update) {
+    update.set("lastModified", Instant.now()).inc("version", 1);
+    return mt.updateFirst(query, update, Goal.class).getMatchedCount() > 0;
   }
 
 }
@@ -1,14 +1,30 @@
 package io.github.iamzaidsheikh.sprint.goal.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
 import java.util.List;
 
+import io.github.iamzaidsheikh.sprint.common.CursorPage;
 import io.github.iamzaidsheikh.sprint.goal.dto.GoalDTO;
 import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.goal.model.GoalStatus;
+import io.github.iamzaidsheikh.sprint.goal.model.GoalSummary;
 
 public interface IGoalService {
-  List<Goal> getAllGoals();
+  CursorPage<Goal> getAllGoals(String cursor, int limit);
 
-  Goal getGoal(String goalId);
+  long exportGoals(GoalStatus status, Instant from, Instant to, OutputStream out) throws IOException;
+
+  Goal getGoal(String goalId, boolean includeTasks);
+
+  GoalSummary getGoalSummary(String goalId);
+
+  CursorPage<Goal> getOpenGoals(String cursor, int limit);
+
+  List<Goal> searchGoals(String text, int offset, int limit);
+
+  List<Goal> getDueSoon(String username, int days);
 
   String createGoal(String username, GoalDTO data);
 
@@ -0,0 +1,12 @@
+package io.github.iamzaidsheikh.sprint.leaderboard.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@AllArgsConstructor
+@Data
+public class LeaderboardEntry {
+  private String username;
+
+  private long score;
+}
@@ -0,0 +1,11 @@
+package io.github.iamzaidsheikh.sprint.leaderboard.service;
+
+import java.util.List;
+
+import io.github.iamzaidsheikh.sprint.leaderboard.model.LeaderboardEntry;
+
+public interface ILeaderboardService {
+  List<LeaderboardEntry> getTopAchievers();
+
+  List<LeaderboardEntry> getTopMentors();
+}
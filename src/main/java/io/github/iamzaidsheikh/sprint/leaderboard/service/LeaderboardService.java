@@ -0,0 +1,98 @@
+package io.github.iamzaidsheikh.sprint.leaderboard.service;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import io.github.iamzaidsheikh.sprint.leaderboard.model.LeaderboardEntry;
+import io.github.iamzaidsheikh.sprint.profile.event.CountersChangedEvent;
+import io.github.iamzaidsheikh.sprint.profile.model.UserProfile;
+import lombok.extern.slf4j.Slf4j;
+
+// Top users by completed and by mentored goals, held in memory. Counter
+// changes relayed by this instance are applied as they happen; the periodic
+// rebuild picks up changes relayed elsewhere and users who fell out of the
+// top k and climbed back.
+@Slf4j
+@Service
+public class LeaderboardService implements ILeaderboardService {
+
+  private final MongoTemplate mt;
+  private final int size;
+  private final TopK achievers;
+  private final TopK mentors;
+
+  public LeaderboardService(MongoTemplate mt, @Value("${sprint.leaderboard.size:10}") int size) {
+    this.mt = mt;
+    this.size = size;
+    this.achievers = new TopK(size);
+    this.mentors = new TopK(size);
+  }
+
+  // Matches the rebuild's sort, so the top k is read off the index instead of
+  // sorting the profiles collection
+  @PostConstruct
+  void ensureIndexes() {
+    var indexOps = mt.indexOps(UserProfile.class);
+    for (var counter : List.of("numGoalsCompleted", "numGoalsMentored")) {
+      indexOps.ensureIndex(new Index().on(counter, Sort.Direction.DESC).on("username", Sort.Direction.ASC));
+    }
+  }
+
+  @Override
+  public List<LeaderboardEntry> getTopAchievers() {
+    return achievers.top();
+  }
+
+  @Override
+  public List<LeaderboardEntry> getTopMentors() {
+    return mentors.top();
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onReady() {
+    rebuild();
+  }
+
+  @Scheduled(initialDelayString = "${sprint.leaderboard.rebuild-interval:300000}",
+      fixedDelayString = "${sprint.leaderboard.rebuild-interval:300000}")
+  public void rebuild() {
+    achievers.replace(top("numGoalsCompleted", UserProfile::getNumGoalsCompleted));
+    mentors.replace(top("numGoalsMentored", UserProfile::getNumGoalsMentored));
+    log.info("Rebuilt leaderboards of the top {} users", size);
+  }
+
+  @EventListener
+  public void onCountersChanged(CountersChangedEvent event) {
+    var query = Query.query(Criteria.where("username").in(event.getUsernames()));
+    query.fields().include("username", "numGoalsCompleted", "numGoalsMentored");
+    for (var profile : mt.find(query, UserProfile.class)) {
+      achievers.offer(profile.getUsername(), profile.getNumGoalsCompleted());
+      mentors.offer(profile.getUsername(), profile.getNumGoalsMentored());
+    }
+  }
+
+  // Walks the counter index from the top and stops after k profiles
+  private List<LeaderboardEntry> top(String counter, ToLongFunction<UserProfile> score) {
+    var query = Query.query(Criteria.where(counter).gt(0))
+        .with(Sort.by(Sort.Order.desc(counter), Sort.Order.asc("username")))
+        .limit(size);
+    query.fields().include("username", counter);
+    return mt.find(query, UserProfile.class).stream()
+        .map(p -> new LeaderboardEntry(p.getUsername(), score.applyAsLong(p)))
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,54 @@
+package io.github.iamzaidsheikh.sprint.leaderboard.service;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import io.github.iamzaidsheikh.sprint.leaderboard.model.LeaderboardEntry;
+
+// The k highest scores, highest first and ties by username. Writers are
+// serialized; readers get an immutable snapshot without locking.
+class TopK {
+
+  private static final Comparator<LeaderboardEntry> RANK = Comparator
+      .comparingLong(LeaderboardEntry::getScore).reversed()
+      .thenComparing(LeaderboardEntry::getUsername);
+
+  private final int k;
+  private final TreeSet<LeaderboardEntry> ranked = new TreeSet<>(RANK);
+  private final Map<String, LeaderboardEntry> byUsername = new HashMap<>();
+  private volatile List<LeaderboardEntry> snapshot = List.of();
+
+  TopK(int k) {
+    this.k = k;
+  }
+
+  List<LeaderboardEntry> top() {
+    return snapshot;
+  }
+
+  synchronized void offer(String username, long score) {
+    var previous = byUsername.remove(username);
+    if (previous != null) {
+      ranked.remove(previous);
+    }
+    var entry = new LeaderboardEntry(username, score);
+    if (score > 0 && (ranked.size() < k || RANK.compare(entry, ranked.last()) < 0)) {
+      ranked.add(entry);
+      byUsername.put(username, entry);
+      if (ranked.size() > k) {
+        byUsername.remove(ranked.pollLast().getUsername());
+      }
+    }
+    snapshot = List.copyOf(ranked);
+  }
+
+  synchronized void replace(List<LeaderboardEntry> entries) {
+    ranked.clear();
+    byUsername.clear();
+    entries.forEach(e -> offer(e.getUsername(), e.getScore()));
+    snapshot = List.copyOf(ranked);
+  }
+}
@@ -3,7 +3,7 @@ package io.github.iamzaidsheikh.sprint.listener;
 import java.time.Instant;
 
 import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
-import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
 import org.springframework.stereotype.Component;
 
 import io.github.iamzaidsheikh.sprint.common.BaseEntity;
@@ -11,13 +11,14 @@ import io.github.iamzaidsheikh.sprint.common.BaseEntity;
 @Component
 public class BeforeSaveEventListener extends AbstractMongoEventListener<BaseEntity> {
 
+    // Stamp before the entity is mapped, changes made on save are not written
     @Override
-    public void onBeforeSave(BeforeSaveEvent<BaseEntity> event) {
+    public void onBeforeConvert(BeforeConvertEvent<BaseEntity> event) {
         Instant timestamp = Instant.now();
         if (event.getSource().getCreatedAt() == null)
             event.getSource().setCreatedAt(timestamp);
         event.getSource().setLastModified(timestamp);
-        super.onBeforeSave(event);
+        super.onBeforeConvert(event);
     }
 
 }
@@ -0,0 +1,173 @@
+package io.github.iamzaidsheikh.sprint.listener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import io.github.iamzaidsheikh.sprint.goal.event.GoalDeletedEvent;
+import io.github.iamzaidsheikh.sprint.profile.model.UserProfile;
+import io.github.iamzaidsheikh.sprint.profile.repo.ProfileCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+// Removes deleted goals from the profiles of their author and mentors off the
+// request thread. Events wait in a bounded queue; each worker drains a batch
+// and pulls every goal in it with one unordered bulk write, one update per
+// profile. Batches that keep failing, and events that do not fit in the
+// queue, are written to the dead-letter log for replay.
+@Slf4j
+@Component
+public class GoalDeletedEventListener {
+
+  private static final Logger deadLetter = LoggerFactory.getLogger("sprint.dead-letter");
+
+  private final MongoTemplate mt;
+  private final ProfileCache pc;
+  private final MeterRegistry registry;
+  private final BlockingQueue<GoalDeletedEvent> queue;
+  private final int workers;
+  private final int batchSize;
+  private final int maxAttempts;
+  private final long backoff;
+  private ExecutorService pool;
+  private volatile boolean running;
+
+  public GoalDeletedEventListener(MongoTemplate mt, ProfileCache pc, MeterRegistry registry,
+      @Value("${sprint.cascade.queue-capacity:10000}") int capacity,
+      @Value("${sprint.cascade.workers:2}") int workers,
+      @Value("${sprint.cascade.batch-size:100}") int batchSize,
+      @Value("${sprint.cascade.max-attempts:5}") int maxAttempts,
+      @Value("${sprint.cascade.backoff:500ms}") Duration backoff) {
+    this.mt = mt;
+    this.pc = pc;
+    this.registry = registry;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.workers = workers;
+    this.batchSize = batchSize;
+    this.maxAttempts = maxAttempts;
+    this.backoff = backoff.toMillis();
+    registry.gaugeCollectionSize("sprint.cascade.queue", List.of(), queue);
+  }
+
+  @PostConstruct
+  void start() {
+    running = true;
+    pool = Executors.newFixedThreadPool(workers, r -> {
+      var t = new Thread(r, "goal-cascade");
+      t.setDaemon(true);
+      return t;
+    });
+    for (int i = 0; i < workers; i++) {
+      pool.execute(this::work);
+    }
+  }
+
+  // Drain whatever is left so a clean shutdown loses nothing
+  @PreDestroy
+  void stop() throws InterruptedException {
+    running = false;
+    pool.shutdownNow();
+    pool.awaitTermination(5, TimeUnit.SECONDS);
+    var rest = new ArrayList<GoalDeletedEvent>();
+    queue.drainTo(rest);
+    if (!rest.isEmpty()) {
+      process(rest);
+    }
+  }
+
+  @EventListener
+  public void onGoalDeleted(GoalDeletedEvent event) {
+    if (!queue.offer(event)) {
+      registry.counter("sprint.cascade.dead-letter").increment();
+      deadLetter.error("Queue full, goal: {} not removed from profiles: {}", event.getGoalId(), event.getUsernames());
+    }
+  }
+
+  private void work() {
+    var batch = new ArrayList<GoalDeletedEvent>(batchSize);
+    while (running) {
+      try {
+        var first = queue.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, batchSize - 1);
+        process(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        log.error("Cascade worker failed", e);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  void process(List<GoalDeletedEvent> batch) throws InterruptedException {
+    var goalsByUser = new HashMap<String, Set<String>>();
+    batch.forEach(e -> e.getUsernames()
+        .forEach(u -> goalsByUser.computeIfAbsent(u, k -> new HashSet<>()).add(e.getGoalId())));
+    for (int attempt = 1;; attempt++) {
+      try {
+        pull(goalsByUser);
+        goalsByUser.keySet().forEach(pc::evict);
+        registry.counter("sprint.cascade.goals").increment(batch.size());
+        log.info("Removed {} deleted goals from {} profiles", batch.size(), goalsByUser.size());
+        return;
+      } catch (RuntimeException e) {
+        if (attempt >= maxAttempts) {
+          registry.counter("sprint.cascade.dead-letter").increment(batch.size());
+          batch.forEach(ev -> deadLetter.error("Gave up on goal: {} for profiles: {}", ev.getGoalId(), ev.getUsernames()));
+          log.error("Could not remove deleted goals from profiles after {} attempts", attempt, e);
+          return;
+        }
+        log.warn("Retrying profile cleanup of {} goals. {}", batch.size(), e.getMessage());
+        Thread.sleep(backoff * attempt);
+      }
+    }
+  }
+
+  // $pull is idempotent, so a retried batch that partly applied is harmless
+  private void pull(Map<String, Set<String>> goalsByUser) {
+    var bulk = mt.bulkOps(BulkMode.UNORDERED, UserProfile.class);
+    goalsByUser.forEach((username, goalIds) -> {
+      // $in values of a $pull condition are not converted, match the stored ObjectIds
+      var ids = goalIds.stream().map(id -> ObjectId.isValid(id) ? new ObjectId(id) : id).collect(Collectors.toList());
+      var deleted = Query.query(Criteria.where("id").in(ids));
+      bulk.updateOne(Query.query(Criteria.where("username").is(username)), new Update()
+          .pull("goals", deleted)
+          .pull("mentored", deleted)
+          .set("lastModified", Instant.now())
+          .inc("version", 1));
+    });
+    bulk.execute();
+  }
+}
@@ -0,0 +1,32 @@
+package io.github.iamzaidsheikh.sprint.migration;
+
+import java.time.Instant;
+
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+
+// Records the migrations that have completed, so the ones that run on every
+// startup scan their collections once per database rather than once per boot.
+// Instances starting together may both run a migration, so each must be
+// idempotent.
+@RequiredArgsConstructor
+@Component
+public class Migrations {
+
+  private static final String COLLECTION = "migrations";
+
+  private final MongoTemplate mt;
+
+  public boolean done(String id) {
+    return mt.exists(Query.query(Criteria.where("_id").is(id)), COLLECTION);
+  }
+
+  public void record(String id) {
+    mt.upsert(Query.query(Criteria.where("_id").is(id)), Update.update("at", Instant.now()), COLLECTION);
+  }
+}
@@ -0,0 +1,51 @@
+package io.github.iamzaidsheikh.sprint.migration;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Goals written before openSlots existed would never show up in the open
+// goals feed, and joins and leaves only move openSlots on goals that have it.
+// Counts the empty mentor slots of every goal whose openSlots is missing or
+// disagrees with its mentors. Runs before the web server starts accepting
+// requests, and is recorded in Migrations so later startups skip the scans.
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class OpenSlotsBackfill implements SmartInitializingSingleton {
+
+  private static final String ID = "open_slots_backfill";
+
+  private final MongoTemplate mt;
+  private final Migrations migrations;
+
+  @Override
+  public void afterSingletonsInstantiated() {
+    if (migrations.done(ID)) {
+      return;
+    }
+    long backfilled = 0;
+    // $ne also matches goals without the field
+    backfilled += backfill(Criteria.where("mentor1").is(null).and("mentor2").is(null), 2);
+    backfilled += backfill(new Criteria().orOperator(
+        Criteria.where("mentor1").is(null).and("mentor2").ne(null),
+        Criteria.where("mentor1").ne(null).and("mentor2").is(null)), 1);
+    backfilled += backfill(Criteria.where("mentor1").ne(null).and("mentor2").ne(null), 0);
+    if (backfilled > 0) {
+      log.info("Initialized open slots of {} goals", backfilled);
+    }
+    migrations.record(ID);
+  }
+
+  private long backfill(Criteria goals, int openSlots) {
+    var query = Query.query(goals).addCriteria(Criteria.where("openSlots").ne(openSlots));
+    return mt.updateMulti(query, new Update().set("openSlots", openSlots), Goal.class).getModifiedCount();
+  }
+}
@@ -0,0 +1,109 @@
+package io.github.iamzaidsheikh.sprint.migration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.profile.event.CountersChangedEvent;
+import io.github.iamzaidsheikh.sprint.profile.model.UserProfile;
+import io.github.iamzaidsheikh.sprint.profile.repo.GoalCounter;
+import io.github.iamzaidsheikh.sprint.profile.repo.ProfileCache;
+import lombok.extern.slf4j.Slf4j;
+
+// Counts the completed goals in numGoalsCompleted and numGoalsMentored and
+// flags their GoalShort copies, after which the outbox relay keeps them up to
+// date. It writes the same guarded per-goal counts as the relay, so it can run
+// while the relay is polling: whichever counts a goal first moves the counter
+// and the other write matches nothing. The author and mentor aggregations run
+// in parallel, as do the profile writes, a batch of profiles per bulk write.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "sprint.profiles.backfill-counters", havingValue = "true")
+public class ProfileCounterBackfill implements ApplicationRunner {
+
+  private static final String COMPLETED = "{ $match: { status: 'COMPLETED' } }";
+
+  private final MongoTemplate mt;
+  private final ProfileCache pc;
+  private final ApplicationEventPublisher publisher;
+  private final int parallelism;
+  private final int profilesPerBatch;
+
+  public ProfileCounterBackfill(MongoTemplate mt, ProfileCache pc, ApplicationEventPublisher publisher,
+      @Value("${sprint.profiles.backfill.parallelism:4}") int parallelism,
+      @Value("${sprint.profiles.backfill.profiles-per-batch:500}") int profilesPerBatch) {
+    this.mt = mt;
+    this.pc = pc;
+    this.publisher = publisher;
+    this.parallelism = parallelism;
+    this.profilesPerBatch = profilesPerBatch;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    var pool = Executors.newFixedThreadPool(parallelism);
+    try {
+      var authored = CompletableFuture.supplyAsync(() -> goalsBy(List.of(
+          COMPLETED,
+          "{ $group: { _id: '$author', goals: { $push: '$_id' } } }")), pool);
+      var mentored = CompletableFuture.supplyAsync(() -> goalsBy(List.of(
+          COMPLETED,
+          "{ $project: { mentors: ['$mentor_1', '$mentor_2'] } }",
+          "{ $unwind: '$mentors' }",
+          "{ $match: { mentors: { $ne: null } } }",
+          "{ $group: { _id: '$mentors', goals: { $push: '$_id' } } }")), pool);
+      var completed = authored.join();
+      var mentoredGoals = mentored.join();
+
+      var counted = new HashSet<>(completed.keySet());
+      counted.addAll(mentoredGoals.keySet());
+      var usernames = new ArrayList<>(counted);
+      var writes = new ArrayList<CompletableFuture<Void>>();
+      for (int from = 0; from < usernames.size(); from += profilesPerBatch) {
+        var batch = usernames.subList(from, Math.min(from + profilesPerBatch, usernames.size()));
+        writes.add(CompletableFuture.runAsync(() -> write(batch, completed, mentoredGoals), pool));
+      }
+      CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new)).join();
+      publisher.publishEvent(new CountersChangedEvent(counted));
+      log.info("Backfilled goal counters of {} profiles", usernames.size());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private Map<String, List<Object>> goalsBy(List<String> stages) {
+    var pipeline = stages.stream().map(Document::parse).toList();
+    var goals = new HashMap<String, List<Object>>();
+    mt.getCollection(mt.getCollectionName(Goal.class)).aggregate(pipeline).allowDiskUse(true)
+        .forEach(d -> goals.put(d.getString("_id"), d.getList("goals", Object.class)));
+    return goals;
+  }
+
+  private void write(List<String> usernames, Map<String, List<Object>> completed,
+      Map<String, List<Object>> mentored) {
+    var bulk = mt.bulkOps(BulkMode.UNORDERED, UserProfile.class);
+    for (var username : usernames) {
+      completed.getOrDefault(username, List.of())
+          .forEach(goalId -> GoalCounter.COMPLETED.count(bulk, username, goalId.toString()));
+      mentored.getOrDefault(username, List.of())
+          .forEach(goalId -> GoalCounter.MENTORED.count(bulk, username, goalId.toString()));
+    }
+    bulk.execute();
+    usernames.forEach(pc::evict);
+  }
+}
@@ -0,0 +1,87 @@
+package io.github.iamzaidsheikh.sprint.migration;
+
+import java.time.Instant;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.goal.repo.GoalCache;
+import io.github.iamzaidsheikh.sprint.task.model.Task;
+import lombok.extern.slf4j.Slf4j;
+
+// Moves embedded tasks into the tasks collection when switching to
+// sprint.tasks.storage=collection. Each round takes a bounded slice of tasks
+// from a bounded number of goals, upserts them and then pulls them from the
+// goals, so it can be stopped and rerun at any point.
+@Slf4j
+@Component
+@ConditionalOnExpression("'${sprint.tasks.storage:embedded}' == 'collection' and ${sprint.tasks.migrate:false}")
+public class TaskCollectionMigration implements ApplicationRunner {
+
+  private final MongoTemplate mt;
+  private final GoalCache cache;
+  private final int goalsPerBatch;
+  private final int tasksPerGoal;
+
+  public TaskCollectionMigration(MongoTemplate mt, GoalCache cache,
+      @Value("${sprint.tasks.migration.goals-per-batch:100}") int goalsPerBatch,
+      @Value("${sprint.tasks.migration.tasks-per-goal:500}") int tasksPerGoal) {
+    this.mt = mt;
+    this.cache = cache;
+    this.goalsPerBatch = goalsPerBatch;
+    this.tasksPerGoal = tasksPerGoal;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    long moved = 0;
+    int moves;
+    do {
+      moves = migrateBatch();
+      moved += moves;
+    } while (moves > 0);
+    log.info("Moved {} embedded tasks to the tasks collection", moved);
+  }
+
+  int migrateBatch() {
+    var query = Query.query(Criteria.where("tasks.0").exists(true)).limit(goalsPerBatch);
+    query.fields().include("id").slice("tasks", tasksPerGoal);
+    var goals = mt.find(query, Goal.class);
+    if (goals.isEmpty()) {
+      return 0;
+    }
+    var upserts = mt.bulkOps(BulkMode.UNORDERED, Task.class);
+    var pulls = mt.bulkOps(BulkMode.UNORDERED, Goal.class);
+    var moves = 0;
+    for (var goal : goals) {
+      var ids = goal.getTasks().stream().map(Task::getId).collect(Collectors.toList());
+      for (var task : goal.getTasks()) {
+        task.setGoalId(goal.getId());
+        upserts.replaceOne(Query.query(Criteria.where("id").is(task.getId())), task,
+            FindAndReplaceOptions.options().upsert());
+      }
+      pulls.updateOne(Query.query(Criteria.where("id").is(goal.getId())), new Update()
+          .pull("tasks", Query.query(Criteria.where("id").in(ids)))
+          .set("lastModified", Instant.now())
+          .inc("version", 1));
+      moves += ids.size();
+    }
+    // Tasks are only pulled once their copies are written
+    upserts.execute();
+    pulls.execute();
+    goals.forEach(goal -> cache.evict(goal.getId()));
+    log.info("Moved {} tasks of {} goals", moves, goals.size());
+    return moves;
+  }
+}
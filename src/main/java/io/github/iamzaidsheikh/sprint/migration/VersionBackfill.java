@@ -0,0 +1,47 @@
+package io.github.iamzaidsheikh.sprint.migration;
+
+import java.util.List;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.profile.model.UserProfile;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Documents written before the version field existed would be treated as new
+// by save() and inserted again, so give them an initial version. Runs on the
+// first startup after the upgrade and is recorded in Migrations afterwards.
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class VersionBackfill implements ApplicationRunner {
+
+  private static final String ID = "version_backfill";
+
+  private final MongoTemplate mt;
+  private final Migrations migrations;
+
+  @Override
+  public void run(ApplicationArguments args) {
+    if (migrations.done(ID)) {
+      return;
+    }
+    for (var type : List.of(Goal.class, UserProfile.class)) {
+      var result = mt.updateMulti(
+          Query.query(Criteria.where("version").exists(false)),
+          new Update().set("version", 0L),
+          type);
+      if (result.getModifiedCount() > 0) {
+        log.info("Initialized version of {} {} documents", result.getModifiedCount(), type.getSimpleName());
+      }
+    }
+    migrations.record(ID);
+  }
+}
@@ -0,0 +1,199 @@
+package io.github.iamzaidsheikh.sprint.outbox;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.github.iamzaidsheikh.sprint.exception.ResourceNotFoundException;
+import io.github.iamzaidsheikh.sprint.goal.event.GoalDeletedEvent;
+import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.goal.model.OutboxEntry;
+import io.github.iamzaidsheikh.sprint.goal.model.OutboxType;
+import io.github.iamzaidsheikh.sprint.profile.event.CountersChangedEvent;
+import io.github.iamzaidsheikh.sprint.profile.model.UserProfile;
+import io.github.iamzaidsheikh.sprint.profile.repo.GoalCounter;
+import io.github.iamzaidsheikh.sprint.profile.repo.ProfileCache;
+import io.github.iamzaidsheikh.sprint.profile.service.IUserProfileService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+
+// Applies the outbox entries goals carry to the GoalShort copies in user
+// profiles, through the profile service. Entries are removed from the goal
+// only after the profile writes succeed, so delivery is at least once and
+// every handler is idempotent: adds are guarded by the goal id not being
+// listed yet, removes are pulls and completion counters only move for goals
+// the profile has not counted yet.
+// Entries of one goal are applied in the order they were written.
+@Slf4j
+@Component
+public class ProfileRelay {
+
+  private final MongoTemplate mt;
+  private final IUserProfileService ups;
+  private final ProfileCache pc;
+  private final MeterRegistry registry;
+  private final ApplicationEventPublisher publisher;
+  private final int batchSize;
+  // Age of the oldest entry still waiting, as of the last poll
+  private final AtomicLong lag = new AtomicLong();
+
+  public ProfileRelay(MongoTemplate mt, IUserProfileService ups, ProfileCache pc, MeterRegistry registry,
+      ApplicationEventPublisher publisher, @Value("${sprint.outbox.batch-size:100}") int batchSize) {
+    this.mt = mt;
+    this.ups = ups;
+    this.pc = pc;
+    this.registry = registry;
+    this.publisher = publisher;
+    this.batchSize = batchSize;
+    TimeGauge.builder("sprint.outbox.lag", lag, TimeUnit.MILLISECONDS, AtomicLong::get)
+        .description("Age of the oldest profile change not yet relayed")
+        .register(registry);
+  }
+
+  // Sparse, so only goals with pending entries are indexed. The poll filters
+  // on the indexed path itself, which the planner can answer from the index.
+  @PostConstruct
+  void ensureIndexes() {
+    mt.indexOps(Goal.class).ensureIndex(new Index().on("outbox.0.at", Sort.Direction.ASC).sparse());
+  }
+
+  @Scheduled(fixedDelayString = "${sprint.outbox.poll-interval:1000}")
+  public void relay() {
+    try {
+      while (relayBatch() == batchSize) {
+        // Keep going while there is a backlog
+      }
+    } catch (RuntimeException e) {
+      // Entries stay in the outbox and are retried on the next poll
+      registry.counter("sprint.outbox.failures").increment();
+      log.error("Could not relay profile changes", e);
+    }
+  }
+
+  int relayBatch() {
+    var query = Query.query(Criteria.where("outbox.0.at").exists(true))
+        .with(Sort.by("outbox.0.at"))
+        .limit(batchSize);
+    query.fields().include("title", "desc", "author", "mentor1", "mentor2", "outbox");
+    var goals = mt.find(query, Goal.class);
+    if (goals.isEmpty()) {
+      lag.set(0);
+      return 0;
+    }
+    lag.set(Duration.between(goals.get(0).getOutbox().get(0).getAt(), Instant.now()).toMillis());
+
+    // Counts are written after the copies they flag, in one ordered bulk write
+    var profiles = mt.bulkOps(BulkMode.ORDERED, UserProfile.class);
+    var relayed = mt.bulkOps(BulkMode.UNORDERED, Goal.class);
+    var counted = new HashSet<String>();
+    var added = new HashMap<String, Set<String>>();
+    var events = 0;
+    for (var goal : goals) {
+      var eventIds = new ArrayList<String>();
+      for (var entry : goal.getOutbox()) {
+        if (entry.getType() == OutboxType.COMPLETED) {
+          counted.addAll(complete(profiles, goal));
+        } else {
+          apply(goal, entry);
+          if (entry.getType() != OutboxType.REMOVE_MENTORED) {
+            added.computeIfAbsent(goal.getId(), k -> new HashSet<>()).add(entry.getUsername());
+          }
+        }
+        eventIds.add(entry.getEventId());
+      }
+      // Entries appended since the read stay for the next poll
+      relayed.updateOne(Query.query(Criteria.where("id").is(goal.getId())),
+          new Update().pull("outbox", Query.query(Criteria.where("eventId").in(eventIds))));
+      events += eventIds.size();
+    }
+    if (!counted.isEmpty()) {
+      profiles.execute();
+    }
+    repullDeleted(added);
+    relayed.execute();
+    counted.forEach(pc::evict);
+    if (!counted.isEmpty()) {
+      publisher.publishEvent(new CountersChangedEvent(counted));
+    }
+    registry.counter("sprint.outbox.relayed").increment(events);
+    log.info("Relayed {} profile changes of {} goals", events, goals.size());
+    return goals.size();
+  }
+
+  // A goal deleted after this poll read it may have been pulled from profiles
+  // before the adds above landed. Checking once the adds are written closes
+  // that gap: a delete that came first is seen here and pulled again through
+  // the delete cascade, and one that comes later pulls the copies itself.
+  private void repullDeleted(Map<String, Set<String>> added) {
+    if (added.isEmpty()) {
+      return;
+    }
+    var query = Query.query(Criteria.where("id").in(List.copyOf(added.keySet())));
+    query.fields().include("id");
+    mt.find(query, Goal.class).forEach(goal -> added.remove(goal.getId()));
+    added.forEach((goalId, usernames) -> {
+      log.info("Goal: {} was deleted while relayed, removing it from profiles again", goalId);
+      publisher.publishEvent(new GoalDeletedEvent(goalId, usernames));
+    });
+  }
+
+  // A profile that is gone has nothing left to update
+  private void apply(Goal goal, OutboxEntry entry) {
+    try {
+      switch (entry.getType()) {
+        case ADD_GOAL:
+          ups.addGoal(goal, entry.getUsername());
+          break;
+        case ADD_MENTORED:
+          ups.addMentored(goal, entry.getUsername());
+          break;
+        case REMOVE_MENTORED:
+          ups.removeMentored(goal.getId(), entry.getUsername());
+          break;
+        default:
+          throw new IllegalStateException("Unexpected outbox entry: " + entry.getType());
+      }
+    } catch (ResourceNotFoundException e) {
+      log.warn("Skipping profile change of goal: {}. {}", goal.getId(), e.getMessage());
+    }
+  }
+
+  // Mentors cannot leave a completed goal, so the ones on the goal now are
+  // the ones who mentored it to completion
+  private static List<String> complete(BulkOperations profiles, Goal goal) {
+    var usernames = new ArrayList<String>();
+    GoalCounter.COMPLETED.count(profiles, goal.getAuthor(), goal.getId());
+    usernames.add(goal.getAuthor());
+    for (var mentor : Arrays.asList(goal.getMentor1(), goal.getMentor2())) {
+      if (mentor != null) {
+        GoalCounter.MENTORED.count(profiles, mentor, goal.getId());
+        usernames.add(mentor);
+      }
+    }
+    return usernames;
+  }
+}
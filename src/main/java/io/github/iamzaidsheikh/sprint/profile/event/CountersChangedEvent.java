@@ -0,0 +1,13 @@
+package io.github.iamzaidsheikh.sprint.profile.event;
+
+import java.util.Set;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Published after the goal counters of these profiles may have changed
+@AllArgsConstructor
+@Data
+public class CountersChangedEvent {
+  private Set<String> usernames;
+}
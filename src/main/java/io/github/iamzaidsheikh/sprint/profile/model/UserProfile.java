@@ -4,11 +4,14 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.ReadOnlyProperty;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import io.github.iamzaidsheikh.sprint.common.BaseEntity;
+import io.github.iamzaidsheikh.sprint.common.Stamped;
 import io.github.iamzaidsheikh.sprint.goal.model.GoalShort;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -16,7 +19,7 @@ import lombok.EqualsAndHashCode;
 @EqualsAndHashCode(callSuper = false)
 @Data
 @Document
-public class UserProfile extends BaseEntity {
+public class UserProfile extends BaseEntity implements Stamped {
     @Id
     private String id;
 
@@ -39,6 +42,18 @@ public class UserProfile extends BaseEntity {
 
     private List<GoalShort> mentored;
 
+    // Full array lengths, computed when goals and mentored are read a page at a time
+    @ReadOnlyProperty
+    @Field(name = "goals_total")
+    private Integer goalsTotal;
+
+    @ReadOnlyProperty
+    @Field(name = "mentored_total")
+    private Integer mentoredTotal;
+
+    @Version
+    private Long version;
+
     public UserProfile(String id, String firstName, String lastName, String username) {
         this.id = id;
         this.firstName = firstName;
@@ -0,0 +1,46 @@
+package io.github.iamzaidsheikh.sprint.profile.repo;
+
+import java.time.Instant;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+// Profile counters of completed goals. Each profile keeps the ids of the goals
+// a counter has counted next to it, and the $inc only applies together with
+// adding the id, so replaying a count never moves the counter twice. This does
+// not depend on the profile holding a GoalShort copy of the goal; the copy is
+// flagged separately when there is one. The counted ids are not mapped on
+// UserProfile and are left out of profile reads.
+public enum GoalCounter {
+    COMPLETED("numGoalsCompleted", "counted_goals", "goals"),
+    MENTORED("numGoalsMentored", "counted_mentored", "mentored");
+
+    private final String counter;
+    private final String counted;
+    private final String copies;
+
+    GoalCounter(String counter, String counted, String copies) {
+        this.counter = counter;
+        this.counted = counted;
+        this.copies = copies;
+    }
+
+    // Array filters are not mapped, so match the copy on its stored _id
+    public void count(BulkOperations profiles, String username, String goalId) {
+        var profile = Criteria.where("username").is(username);
+        profiles.updateOne(Query.query(profile).addCriteria(Criteria.where(counted).ne(goalId)),
+                stamp(new Update().inc(counter, 1).addToSet(counted, goalId)));
+        var storedId = ObjectId.isValid(goalId) ? new ObjectId(goalId) : goalId;
+        var unflagged = Criteria.where(copies).elemMatch(Criteria.where("id").is(goalId).and("completed").ne(true));
+        profiles.updateOne(Query.query(profile).addCriteria(unflagged),
+                stamp(new Update().set(copies + ".$[g].completed", true)
+                        .filterArray(Criteria.where("g._id").is(storedId))));
+    }
+
+    private static Update stamp(Update update) {
+        return update.set("lastModified", Instant.now()).inc("version", 1);
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.iamzaidsheikh.sprint.profile.repo;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.github.iamzaidsheikh.sprint.profile.model.UserProfile;
+import io.github.iamzaidsheikh.sprint.threads.ExecutionMode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+// Read-through cache of the first page of each profile by username. Cached
+// profiles are shared and must not be modified; writers load their own copy
+// from the repository and evict the username once the write is done.
+@Component
+public class ProfileCache {
+
+    public static final int PAGE_SIZE = 20;
+
+    private final UserProfileRepo upr;
+    private final AsyncCache<String, UserProfile> cache;
+    private final Executor loader;
+
+    public ProfileCache(UserProfileRepo upr, MeterRegistry registry, ExecutionMode mode,
+            @Value("${sprint.cache.profiles.max-size:10000}") long maxSize,
+            @Value("${sprint.cache.profiles.ttl:5m}") Duration ttl) {
+        this.upr = upr;
+        this.loader = mode.loader();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(registry, cache.synchronous(), "profiles");
+    }
+
+    public Optional<UserProfile> find(String username) {
+        return Optional.ofNullable(ExecutionMode.await(cache.get(username, (u, executor) -> CompletableFuture
+                .supplyAsync(() -> upr.findPageByUsername(u, 0, PAGE_SIZE).orElse(null), loader))));
+    }
+
+    public void evict(String username) {
+        cache.synchronous().invalidate(username);
+    }
+
+}
@@ -2,10 +2,23 @@ package io.github.iamzaidsheikh.sprint.profile.repo;
 
 import java.util.Optional;
 
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 import io.github.iamzaidsheikh.sprint.profile.model.UserProfile;
 
 public interface UserProfileRepo extends MongoRepository<UserProfile, String> {
     Optional<UserProfile> findByUsername(String username);
+
+    // Slices goals and mentored on the server and counts the full arrays, and
+    // leaves out the ids GoalCounter keeps. The result holds partial arrays and
+    // must never be saved back.
+    @Aggregation(pipeline = {
+            "{ $match: { username: ?0 } }",
+            "{ $project: { counted_goals: 0, counted_mentored: 0 } }",
+            "{ $addFields: { goals: { $ifNull: ['$goals', []] }, mentored: { $ifNull: ['$mentored', []] } } }",
+            "{ $addFields: { goals_total: { $size: '$goals' }, mentored_total: { $size: '$mentored' },"
+                    + " goals: { $slice: ['$goals', ?1, ?2] }, mentored: { $slice: ['$mentored', ?1, ?2] } } }"
+    })
+    Optional<UserProfile> findPageByUsername(String username, int offset, int limit);
 }
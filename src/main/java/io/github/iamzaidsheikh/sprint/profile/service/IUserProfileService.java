@@ -7,7 +7,7 @@ import io.github.iamzaidsheikh.sprint.profile.model.UserProfile;
 public interface IUserProfileService {
     UserProfile createProfile(User user);
 
-    UserProfile getProfile(String username);
+    UserProfile getProfile(String username, int offset, int limit);
 
     String addGoal(Goal goal, String username);
 
@@ -15,4 +15,6 @@ public interface IUserProfileService {
 
     String removeGoal(String goalId, String username);
 
+    String removeMentored(String goalId, String username);
+
 }
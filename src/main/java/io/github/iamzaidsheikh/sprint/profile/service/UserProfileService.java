@@ -1,12 +1,20 @@
 package io.github.iamzaidsheikh.sprint.profile.service;
 
+import java.time.Instant;
+
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import io.github.iamzaidsheikh.sprint.auth.model.User;
+import io.github.iamzaidsheikh.sprint.exception.BadRequestException;
 import io.github.iamzaidsheikh.sprint.exception.ResourceNotFoundException;
 import io.github.iamzaidsheikh.sprint.goal.model.Goal;
 import io.github.iamzaidsheikh.sprint.goal.model.GoalShort;
 import io.github.iamzaidsheikh.sprint.profile.model.UserProfile;
+import io.github.iamzaidsheikh.sprint.profile.repo.ProfileCache;
 import io.github.iamzaidsheikh.sprint.profile.repo.UserProfileRepo;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -16,7 +24,11 @@ import lombok.extern.slf4j.Slf4j;
 @Service
 public class UserProfileService implements IUserProfileService {
 
+    public static final int MAX_PAGE_SIZE = 100;
+
     private final UserProfileRepo upr;
+    private final ProfileCache pc;
+    private final MongoTemplate mt;
 
     @Override
     public UserProfile createProfile(User user) {
@@ -26,12 +38,20 @@ public class UserProfileService implements IUserProfileService {
                 user.getLastName(),
                 user.getUsername());
         log.info("Creating profile for user: {}", user.getUsername());
-        return upr.save(profile);
+        var saved = upr.save(profile);
+        pc.evict(user.getUsername());
+        return saved;
     }
 
     @Override
-    public UserProfile getProfile(String username) {
-        var profile = upr.findByUsername(username);
+    public UserProfile getProfile(String username, int offset, int limit) {
+        if (offset < 0 || limit < 1 || limit > MAX_PAGE_SIZE) {
+            log.error("Invalid page offset: {} or size: {}", offset, limit);
+            throw new BadRequestException("Offset must not be negative and limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        var profile = offset == 0 && limit == ProfileCache.PAGE_SIZE
+                ? pc.find(username)
+                : upr.findPageByUsername(username, offset, limit);
         if (profile.isEmpty()) {
             log.error("Could not find profile for user: {}", username);
             throw new ResourceNotFoundException("Could not find profile for user: " + username);
@@ -41,56 +61,78 @@ public class UserProfileService implements IUserProfileService {
 
     @Override
     public String addGoal(Goal goal, String username) {
-        var po = upr.findByUsername(username);
-        if (po.isEmpty()) {
-            log.error("Could not find profile for user: {}", username);
-            throw new ResourceNotFoundException("Could not find profile for user: " + username);
-        }
-        var profile = po.get();
-        var goals = profile.getGoals();
-        goals.add(new GoalShort(goal.getId(),
-                goal.getTitle(),
-                goal.getDesc(),
-                goal.getAuthor()));
         log.info("Adding goal: {} to user: {} 's profile", goal.getId(), username);
-        profile.setGoals(goals);
-        return upr.save(profile).getUsername();
+        return add(goal, username, "goals");
     }
 
     @Override
     public String removeGoal(String goalId, String username) {
-        var po = upr.findByUsername(username);
-        if (po.isEmpty()) {
-            log.error("Could not find profile for user: {}", username);
-            throw new ResourceNotFoundException("Could not find profile for user: " + username);
-        }
-        var profile = po.get();
-        var goals = profile.getGoals();
-        var go = goals.stream().findFirst().filter(g -> g.getId().equals(goalId));
-        if (go.isEmpty()) {
+        var query = byUsername(username).addCriteria(Criteria.where("goals.id").is(goalId));
+        var update = new Update().pull("goals", Query.query(Criteria.where("id").is(goalId)));
+        if (!update(username, query, update)) {
+            requireProfile(username);
             log.error("Could not find goal: {}", goalId);
             throw new ResourceNotFoundException("Could not find goal: " + goalId);
         }
-        goals.remove(go.get());
-        return upr.save(profile).getUsername();
+        return username;
     }
 
     @Override
     public String addMentored(Goal goal, String username) {
-        var po = upr.findByUsername(username);
-        if (po.isEmpty()) {
+        log.info("Adding mentored goal: {} to user: {} 's profile", goal.getId(), username);
+        return add(goal, username, "mentored");
+    }
+
+    // A mentor that is no longer listed has already been removed
+    @Override
+    public String removeMentored(String goalId, String username) {
+        log.info("Removing mentored goal: {} from user: {} 's profile", goalId, username);
+        var query = byUsername(username).addCriteria(Criteria.where("mentored.id").is(goalId));
+        var update = new Update().pull("mentored", Query.query(Criteria.where("id").is(goalId)));
+        if (!update(username, query, update)) {
+            requireProfile(username);
+        }
+        return username;
+    }
+
+    // The push only applies while the goal id is not listed, so a retried
+    // call adds nothing, whatever the state of the copy already there
+    private String add(Goal goal, String username, String list) {
+        var query = byUsername(username).addCriteria(Criteria.where(list + ".id").ne(goal.getId()));
+        if (!update(username, query, new Update().push(list, toShort(goal)))) {
+            requireProfile(username);
+        }
+        return username;
+    }
+
+    private void requireProfile(String username) {
+        if (!mt.exists(byUsername(username), UserProfile.class)) {
             log.error("Could not find profile for user: {}", username);
             throw new ResourceNotFoundException("Could not find profile for user: " + username);
         }
-        var profile = po.get();
-        var mentored = profile.getMentored();
-        mentored.add(new GoalShort(goal.getId(),
+    }
+
+    // Single atomic write that also moves the version, so concurrent array
+    // updates cannot overwrite each other and cached ETags go stale
+    private boolean update(String username, Query query, Update update) {
+        update.set("lastModified", Instant.now()).inc("version", 1);
+        var matched = mt.updateFirst(query, update, UserProfile.class).getMatchedCount() > 0;
+        if (matched) {
+            pc.evict(username);
+        }
+        return matched;
+    }
+
+    private static Query byUsername(String username) {
+        return Query.query(Criteria.where("username").is(username));
+    }
+
+    private static GoalShort toShort(Goal goal) {
+        return new GoalShort(goal.getId(),
                 goal.getTitle(),
                 goal.getDesc(),
-                goal.getAuthor()));
-        log.info("Adding goal: {} to user: {} 's profile", goal.getId(), username);
-        profile.setMentored(mentored);
-        return upr.save(profile).getUsername();
+                goal.getAuthor(),
+                false);
     }
 
 }
@@ -0,0 +1,45 @@
+package io.github.iamzaidsheikh.sprint.stats.model;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import lombok.Data;
+
+// Materialized by the stats service, one document per user keyed by username
+@Data
+@Document("user_stats")
+public class UserStats {
+
+  @Id
+  private String username;
+
+  private long authored;
+
+  private long completed;
+
+  private long overdue;
+
+  private long tasks;
+
+  // Tasks that were submitted, whether approved yet or not
+  private long submitted;
+
+  private long approved;
+
+  private long mentored;
+
+  @Field(name = "mentored_completed")
+  private long mentoredCompleted;
+
+  @Field(name = "avg_tasks_per_goal")
+  private double avgTasksPerGoal;
+
+  @Field(name = "approval_rate")
+  private double approvalRate;
+
+  @Field(name = "updated_at")
+  private Instant updatedAt;
+}
@@ -0,0 +1,8 @@
+package io.github.iamzaidsheikh.sprint.stats.repo;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import io.github.iamzaidsheikh.sprint.stats.model.UserStats;
+
+public interface UserStatsRepo extends MongoRepository<UserStats, String> {
+}
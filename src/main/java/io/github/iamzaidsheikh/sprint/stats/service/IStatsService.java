@@ -0,0 +1,7 @@
+package io.github.iamzaidsheikh.sprint.stats.service;
+
+import io.github.iamzaidsheikh.sprint.stats.model.UserStats;
+
+public interface IStatsService {
+  UserStats getStats(String username);
+}
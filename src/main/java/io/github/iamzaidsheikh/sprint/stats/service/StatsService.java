@@ -0,0 +1,232 @@
+package io.github.iamzaidsheikh.sprint.stats.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import io.github.iamzaidsheikh.sprint.exception.ResourceNotFoundException;
+import io.github.iamzaidsheikh.sprint.goal.event.GoalDeletedEvent;
+import io.github.iamzaidsheikh.sprint.goal.event.MentorLeftEvent;
+import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.stats.model.UserStats;
+import io.github.iamzaidsheikh.sprint.stats.repo.UserStatsRepo;
+import io.github.iamzaidsheikh.sprint.task.repo.TaskStore;
+import lombok.extern.slf4j.Slf4j;
+
+// Keeps per-user goal statistics in the user_stats collection. Each run only
+// looks at goals modified since the previous one, and recomputes the stats of
+// everyone on them from all of their goals, so the result does not depend on
+// what the goals looked like before. Users who are no longer on a changed
+// goal, because it was deleted or they left it, are reported by events and
+// picked up by the next run on this instance.
+@Slf4j
+@Service
+public class StatsService implements IStatsService {
+
+  private static final String RUNS = "stats_runs";
+  private static final String WATERMARK = "goals";
+  // Goals stamped just before a run may only be visible after its query, so
+  // every run starts a little before the previous one did
+  private static final Duration OVERLAP = Duration.ofSeconds(5);
+
+  private static final List<String> AUTHOR_STAGES = List.of(
+      "{ $project: { author: 1, status: 1, tasks: '$tasks.status' } }",
+      "{ $unwind: { path: '$tasks', preserveNullAndEmptyArrays: true } }",
+      "{ $group: { _id: '$_id', author: { $first: '$author' }, status: { $first: '$status' },"
+          + " tasks: { $sum: { $cond: [{ $ifNull: ['$tasks', false] }, 1, 0] } },"
+          + " submitted: { $sum: { $cond: [{ $in: ['$tasks', ['PENDING', 'COMPLETED']] }, 1, 0] } },"
+          + " approved: { $sum: { $cond: [{ $eq: ['$tasks', 'COMPLETED'] }, 1, 0] } } } }",
+      "{ $group: { _id: '$author', authored: { $sum: 1 },"
+          + " completed: { $sum: { $cond: [{ $eq: ['$status', 'COMPLETED'] }, 1, 0] } },"
+          + " overdue: { $sum: { $cond: [{ $eq: ['$status', 'OVERDUE'] }, 1, 0] } },"
+          + " tasks: { $sum: '$tasks' }, submitted: { $sum: '$submitted' }, approved: { $sum: '$approved' } } }");
+
+  private static final List<String> MENTOR_STAGES = List.of(
+      "{ $project: { status: 1, mentors: ['$mentor_1', '$mentor_2'] } }",
+      "{ $unwind: '$mentors' }");
+
+  private static final String MENTOR_GROUP = "{ $group: { _id: '$mentors', mentored: { $sum: 1 },"
+      + " mentored_completed: { $sum: { $cond: [{ $eq: ['$status', 'COMPLETED'] }, 1, 0] } } } }";
+
+  private final MongoTemplate mt;
+  private final UserStatsRepo usr;
+  private final TaskStore store;
+  private final int batchSize;
+  private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+  public StatsService(MongoTemplate mt, UserStatsRepo usr, TaskStore store,
+      @Value("${sprint.stats.batch-size:500}") int batchSize) {
+    this.mt = mt;
+    this.usr = usr;
+    this.store = store;
+    this.batchSize = batchSize;
+  }
+
+  @PostConstruct
+  void ensureIndexes() {
+    mt.indexOps(Goal.class).ensureIndex(new Index().on("lastModified", Sort.Direction.ASC));
+  }
+
+  @Override
+  public UserStats getStats(String username) {
+    log.info("Fetching stats of user: {}", username);
+    var stats = usr.findById(username);
+    if (stats.isEmpty()) {
+      log.error("Could not find stats of user: {}", username);
+      throw new ResourceNotFoundException("Could not find stats of user: " + username);
+    }
+    return stats.get();
+  }
+
+  @EventListener
+  public void onGoalDeleted(GoalDeletedEvent event) {
+    pending.addAll(event.getUsernames());
+  }
+
+  @EventListener
+  public void onMentorLeft(MentorLeftEvent event) {
+    pending.add(event.getUsername());
+  }
+
+  @Scheduled(fixedDelayString = "${sprint.stats.interval:60000}")
+  public void refresh() {
+    var started = Instant.now();
+    var usernames = new HashSet<String>();
+    for (var user : List.copyOf(pending)) {
+      pending.remove(user);
+      usernames.add(user);
+    }
+    try {
+      var since = watermark();
+      usernames.addAll(changedUsers(since));
+      var batch = new ArrayList<>(usernames);
+      for (int from = 0; from < batch.size(); from += batchSize) {
+        recompute(batch.subList(from, Math.min(from + batchSize, batch.size())), started);
+      }
+      mt.upsert(Query.query(Criteria.where("_id").is(WATERMARK)), Update.update("at", started.minus(OVERLAP)), RUNS);
+      log.info("Refreshed stats of {} users for goals modified since: {}", usernames.size(), since);
+    } catch (RuntimeException e) {
+      // The watermark stays put, so the next run covers these goals again
+      pending.addAll(usernames);
+      log.error("Could not refresh user stats", e);
+    }
+  }
+
+  private Instant watermark() {
+    var run = mt.findById(WATERMARK, Document.class, RUNS);
+    return run == null ? null : run.getDate("at").toInstant();
+  }
+
+  // Everyone on a goal modified since the watermark, or on any goal the
+  // first time
+  private Set<String> changedUsers(Instant since) {
+    var query = since == null ? new Query() : Query.query(Criteria.where("lastModified").gte(since));
+    query.fields().include("author", "mentor1", "mentor2");
+    var usernames = new HashSet<String>();
+    try (var goals = mt.stream(query, Goal.class)) {
+      goals.forEachRemaining(g -> Stream.of(g.getAuthor(), g.getMentor1(), g.getMentor2())
+          .filter(Objects::nonNull)
+          .forEach(usernames::add));
+    }
+    return usernames;
+  }
+
+  void recompute(List<String> usernames, Instant now) {
+    var authored = aggregate(authorPipeline(usernames));
+    var mentored = aggregate(mentorPipeline(usernames));
+    var bulk = mt.bulkOps(BulkMode.UNORDERED, UserStats.class);
+    for (var username : usernames) {
+      var a = authored.getOrDefault(username, new Document());
+      var m = mentored.getOrDefault(username, new Document());
+      long goals = count(a, "authored");
+      long tasks = count(a, "tasks");
+      long submitted = count(a, "submitted");
+      long approved = count(a, "approved");
+      var update = new Update()
+          .set("authored", goals)
+          .set("completed", count(a, "completed"))
+          .set("overdue", count(a, "overdue"))
+          .set("tasks", tasks)
+          .set("submitted", submitted)
+          .set("approved", approved)
+          .set("mentored", count(m, "mentored"))
+          .set("mentoredCompleted", count(m, "mentored_completed"))
+          .set("avgTasksPerGoal", goals == 0 ? 0.0 : (double) tasks / goals)
+          .set("approvalRate", submitted == 0 ? 0.0 : (double) approved / submitted)
+          .set("updatedAt", now);
+      bulk.upsert(Query.query(Criteria.where("username").is(username)), update);
+    }
+    bulk.execute();
+  }
+
+  // The matches only take the users' own goals and are served by the role
+  // indexes; tasks kept in their own collection are joined in by goal id
+  private List<Document> authorPipeline(List<String> usernames) {
+    var pipeline = new ArrayList<Document>();
+    pipeline.add(new Document("$match", new Document("author", new Document("$in", usernames))));
+    if (!store.storesTasksOnGoal()) {
+      pipeline.add(Document.parse(
+          "{ $lookup: { from: 'tasks', localField: '_id', foreignField: 'goal_id', as: 'tasks' } }"));
+    }
+    AUTHOR_STAGES.forEach(s -> pipeline.add(Document.parse(s)));
+    return pipeline;
+  }
+
+  // A goal matched for one mentor also names the other, who is dropped after
+  // the unwind
+  private static List<Document> mentorPipeline(List<String> usernames) {
+    var in = new Document("$in", usernames);
+    var pipeline = new ArrayList<Document>();
+    pipeline.add(new Document("$match", new Document("$or", List.of(
+        new Document("mentor_1", in),
+        new Document("mentor_2", in)))));
+    MENTOR_STAGES.forEach(s -> pipeline.add(Document.parse(s)));
+    pipeline.add(new Document("$match", new Document("mentors", in)));
+    pipeline.add(Document.parse(MENTOR_GROUP));
+    return pipeline;
+  }
+
+  private Map<String, Document> aggregate(List<Document> pipeline) {
+    var aggregation = Aggregation.newAggregation(pipeline.stream().map(StatsService::stage).toList())
+        .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+    var results = new HashMap<String, Document>();
+    mt.aggregate(aggregation, mt.getCollectionName(Goal.class), Document.class)
+        .forEach(d -> results.put(d.getString("_id"), d));
+    return results;
+  }
+
+  private static AggregationOperation stage(Document stage) {
+    return context -> stage;
+  }
+
+  private static long count(Document result, String field) {
+    var value = result.get(field, Number.class);
+    return value == null ? 0 : value.longValue();
+  }
+}
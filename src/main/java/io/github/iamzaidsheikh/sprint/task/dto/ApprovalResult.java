@@ -0,0 +1,19 @@
+package io.github.iamzaidsheikh.sprint.task.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@AllArgsConstructor
+@Data
+public class ApprovalResult {
+
+  private String goalId;
+
+  private String taskId;
+
+  private boolean approved;
+
+  // Why the task was not approved, null when it was
+  private String error;
+
+}
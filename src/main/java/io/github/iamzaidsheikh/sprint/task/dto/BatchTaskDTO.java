@@ -0,0 +1,22 @@
+package io.github.iamzaidsheikh.sprint.task.dto;
+
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class BatchTaskDTO {
+
+  @NotEmpty(message = "At least one task is required.")
+  @Size(max = 100, message = "A maximum of 100 tasks can be created at once")
+  private List<@Valid TaskDTO> tasks;
+
+}
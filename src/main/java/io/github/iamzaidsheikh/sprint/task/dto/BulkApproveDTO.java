@@ -0,0 +1,22 @@
+package io.github.iamzaidsheikh.sprint.task.dto;
+
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class BulkApproveDTO {
+
+  @NotEmpty(message = "At least one task is required.")
+  @Size(max = 200, message = "A maximum of 200 tasks can be approved at once")
+  private List<@Valid TaskRefDTO> tasks;
+
+}
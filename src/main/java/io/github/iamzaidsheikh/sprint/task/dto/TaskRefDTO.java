@@ -0,0 +1,20 @@
+package io.github.iamzaidsheikh.sprint.task.dto;
+
+import javax.validation.constraints.NotBlank;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class TaskRefDTO {
+
+  @NotBlank(message = "Goal id is required.")
+  private String goalId;
+
+  @NotBlank(message = "Task id is required.")
+  private String taskId;
+
+}
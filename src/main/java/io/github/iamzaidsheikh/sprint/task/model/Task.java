@@ -3,7 +3,9 @@ package io.github.iamzaidsheikh.sprint.task.model;
 import java.time.Instant;
 import java.util.UUID;
 
+import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
 
 import io.github.iamzaidsheikh.sprint.common.BaseEntity;
 import io.github.iamzaidsheikh.sprint.task.dto.SubmitTaskDTO;
@@ -12,10 +14,15 @@ import lombok.EqualsAndHashCode;
 
 @EqualsAndHashCode(callSuper = false)
 @Data
+@Document("tasks")
 public class Task extends BaseEntity {
 
   private String id;
 
+  // Only set when tasks are stored in their own collection
+  @Field(name = "goal_id", targetType = FieldType.OBJECT_ID)
+  private String goalId;
+
   private String desc;
 
   @Field(name = "assigned_by")
@@ -2,6 +2,7 @@ package io.github.iamzaidsheikh.sprint.task.model;
 
 public enum TaskStatus {
   NEW,
+  OVERDUE,
   PENDING,
   COMPLETED,
 }
@@ -0,0 +1,201 @@
+package io.github.iamzaidsheikh.sprint.task.repo;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.task.model.Task;
+import io.github.iamzaidsheikh.sprint.task.model.TaskStatus;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Tasks kept in their own collection keyed by (goal_id, _id), so the goal
+// document stays the same size however many tasks it has. The goal
+// preconditions are checked by a conditional stamp of the goal before the
+// task itself is written; the two writes are not atomic.
+@Slf4j
+@RequiredArgsConstructor
+@Repository
+@ConditionalOnProperty(name = "sprint.tasks.storage", havingValue = "collection")
+public class CollectionTaskStore implements TaskStore {
+
+  private final MongoTemplate mt;
+
+  // Declared here rather than on Task, since annotation driven index
+  // creation would also index the embedded tasks array of every goal
+  @PostConstruct
+  void ensureIndexes() {
+    var indexOps = mt.indexOps(Task.class);
+    indexOps.ensureIndex(new Index().on("goal_id", Sort.Direction.ASC).on("created_at", Sort.Direction.DESC));
+    indexOps.ensureIndex(new Index().on("goal_id", Sort.Direction.ASC).on("status", Sort.Direction.ASC));
+    indexOps.ensureIndex(new Index().on("status", Sort.Direction.ASC).on("deadline", Sort.Direction.ASC));
+    log.info("Ensured indexes on the tasks collection");
+  }
+
+  @Override
+  public boolean storesTasksOnGoal() {
+    return false;
+  }
+
+  @Override
+  public boolean insert(Query goal, List<Task> tasks) {
+    if (!touch(goal)) {
+      return false;
+    }
+    mt.insertAll(tasks);
+    return true;
+  }
+
+  @Override
+  public boolean update(Query goal, String goalId, String taskId, TaskStatus expected, Map<String, Object> fields) {
+    if (!touch(goal)) {
+      return false;
+    }
+    var query = byKey(goalId, taskId);
+    if (expected != null) {
+      query.addCriteria(Criteria.where("status").is(expected));
+    }
+    var update = new Update();
+    fields.forEach(update::set);
+    return mt.updateFirst(query, update, Task.class).getMatchedCount() > 0;
+  }
+
+  @Override
+  public boolean delete(Query goal, String goalId, String taskId) {
+    if (!touch(goal)) {
+      return false;
+    }
+    return mt.remove(byKey(goalId, taskId), Task.class).getDeletedCount() > 0;
+  }
+
+  @Override
+  public Map<String, Set<String>> updateAll(Map<String, Query> goals, Map<String, Set<String>> taskIds,
+      TaskStatus expected, Map<String, Object> fields, Instant now) {
+    // Dates are stored to the millisecond, so the stamp is read back as that
+    var stamp = now.truncatedTo(ChronoUnit.MILLIS);
+    // Only the tasks of goals that still match are written
+    var matched = matching(goals.values());
+    if (matched.isEmpty()) {
+      return Map.of();
+    }
+    var stamps = mt.bulkOps(BulkMode.UNORDERED, Goal.class);
+    var updates = mt.bulkOps(BulkMode.UNORDERED, Task.class);
+    var ids = new HashSet<String>();
+    matched.forEach(goalId -> {
+      stamps.updateOne(goals.get(goalId), stamp());
+      var query = Query.query(Criteria.where("goalId").is(goalId).and("id").in(taskIds.get(goalId)));
+      if (expected != null) {
+        query.addCriteria(Criteria.where("status").is(expected));
+      }
+      var update = new Update();
+      fields.forEach(update::set);
+      updates.updateMulti(query, update.set("lastModified", stamp));
+      ids.addAll(taskIds.get(goalId));
+    });
+    stamps.execute();
+    updates.execute();
+    // The bulk result only has totals, so the tasks this write changed are
+    // the requested ones that carry its stamp
+    var query = Query.query(Criteria.where("goalId").in(matched).and("id").in(ids).and("lastModified").is(stamp));
+    query.fields().include("goalId");
+    return mt.find(query, Task.class).stream()
+        .collect(Collectors.groupingBy(Task::getGoalId, Collectors.mapping(Task::getId, Collectors.toSet())));
+  }
+
+  private Set<String> matching(Collection<Query> goals) {
+    var query = new BasicQuery(new Document("$or", goals.stream().map(Query::getQueryObject).toList()),
+        new Document("_id", 1));
+    return mt.find(query, Goal.class).stream().map(Goal::getId).collect(Collectors.toSet());
+  }
+
+  @Override
+  public Optional<Task> find(String goalId, String taskId) {
+    return Optional.ofNullable(mt.findOne(byKey(goalId, taskId), Task.class));
+  }
+
+  @Override
+  public Map<String, Map<String, TaskStatus>> findStatuses(Map<String, Set<String>> taskIds) {
+    var ids = taskIds.values().stream().flatMap(Set::stream).collect(Collectors.toList());
+    var query = Query.query(Criteria.where("goalId").in(taskIds.keySet()).and("id").in(ids));
+    query.fields().include("goalId", "status");
+    var statuses = new HashMap<String, Map<String, TaskStatus>>();
+    for (var task : mt.find(query, Task.class)) {
+      statuses.computeIfAbsent(task.getGoalId(), g -> new HashMap<>()).put(task.getId(), task.getStatus());
+    }
+    return statuses;
+  }
+
+  @Override
+  public List<Task> findByGoal(String goalId) {
+    var query = Query.query(Criteria.where("goalId").is(goalId))
+        .with(Sort.by(Sort.Direction.DESC, "createdAt"));
+    return mt.find(query, Task.class);
+  }
+
+  @Override
+  public Map<String, List<Task>> findByGoals(Collection<String> goalIds) {
+    var query = Query.query(Criteria.where("goalId").in(goalIds))
+        .with(Sort.by(Sort.Direction.DESC, "createdAt"));
+    return mt.find(query, Task.class).stream().collect(Collectors.groupingBy(Task::getGoalId));
+  }
+
+  @Override
+  public List<Task> findDue(Instant before) {
+    var query = Query.query(Criteria.where("status").is(TaskStatus.NEW).and("deadline").lt(before));
+    query.fields().include("goalId", "status", "deadline");
+    return mt.find(query, Task.class);
+  }
+
+  @Override
+  public void markOverdue(Collection<String> goalIds, Instant now) {
+    var query = Query.query(Criteria.where("goalId").in(goalIds)
+        .and("status").is(TaskStatus.NEW)
+        .and("deadline").lte(now));
+    if (mt.updateMulti(query, Update.update("status", TaskStatus.OVERDUE), Task.class).getModifiedCount() > 0) {
+      mt.updateMulti(Query.query(Criteria.where("id").in(goalIds)), stamp(), Goal.class);
+    }
+  }
+
+  @Override
+  public void deleteByGoal(String goalId) {
+    var removed = mt.remove(Query.query(Criteria.where("goalId").is(goalId)), Task.class).getDeletedCount();
+    log.info("Removed {} tasks of goal: {}", removed, goalId);
+  }
+
+  private static Query byKey(String goalId, String taskId) {
+    return Query.query(Criteria.where("goalId").is(goalId).and("id").is(taskId));
+  }
+
+  // Checks the goal preconditions and stamps the goal in one round trip, so
+  // task changes still move the goal's lastModified and version
+  private boolean touch(Query goal) {
+    return mt.updateFirst(goal, stamp(), Goal.class).getMatchedCount() > 0;
+  }
+
+  private static Update stamp() {
+    return new Update().set("lastModified", Instant.now()).inc("version", 1);
+  }
+
+}
@@ -0,0 +1,209 @@
+package io.github.iamzaidsheikh.sprint.task.repo;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.task.model.Task;
+import io.github.iamzaidsheikh.sprint.task.model.TaskStatus;
+import lombok.RequiredArgsConstructor;
+
+// Tasks kept in the goal document. Preconditions and the task change go out
+// as a single update on the goal, touching only the targeted array element.
+@RequiredArgsConstructor
+@Repository
+@ConditionalOnProperty(name = "sprint.tasks.storage", havingValue = "embedded", matchIfMissing = true)
+public class EmbeddedTaskStore implements TaskStore {
+
+  private final MongoTemplate mt;
+
+  // Multikey index over the same array, so an $elemMatch bounds both fields
+  @PostConstruct
+  void ensureIndexes() {
+    mt.indexOps(Goal.class).ensureIndex(new Index().on("tasks.status", Sort.Direction.ASC)
+        .on("tasks.deadline", Sort.Direction.ASC));
+  }
+
+  @Override
+  public boolean storesTasksOnGoal() {
+    return true;
+  }
+
+  @Override
+  public boolean insert(Query goal, List<Task> tasks) {
+    // Newest first, as if the tasks had been added one at a time
+    var newestFirst = new ArrayList<>(tasks);
+    Collections.reverse(newestFirst);
+    return update(goal, new Update().push("tasks").atPosition(0).each(newestFirst.toArray()));
+  }
+
+  @Override
+  public boolean update(Query goal, String goalId, String taskId, TaskStatus expected, Map<String, Object> fields) {
+    var element = Criteria.where("id").is(taskId);
+    if (expected != null) {
+      element = element.and("status").is(expected);
+    }
+    goal.addCriteria(Criteria.where("tasks").elemMatch(element));
+    var update = new Update().filterArray(Criteria.where("t._id").is(taskId));
+    fields.forEach((field, value) -> update.set("tasks.$[t]." + field, value));
+    return update(goal, update);
+  }
+
+  @Override
+  public boolean delete(Query goal, String goalId, String taskId) {
+    goal.addCriteria(Criteria.where("tasks.id").is(taskId));
+    return update(goal, new Update().pull("tasks", Query.query(Criteria.where("id").is(taskId))));
+  }
+
+  @Override
+  public Map<String, Set<String>> updateAll(Map<String, Query> goals, Map<String, Set<String>> taskIds,
+      TaskStatus expected, Map<String, Object> fields, Instant now) {
+    // Dates are stored to the millisecond, so the stamp is read back as that
+    var stamp = now.truncatedTo(ChronoUnit.MILLIS);
+    var bulk = mt.bulkOps(BulkMode.UNORDERED, Goal.class);
+    goals.forEach((goalId, goal) -> {
+      // Array filters are passed through unmapped, hence the raw field names
+      var element = Criteria.where("t._id").in(taskIds.get(goalId));
+      if (expected != null) {
+        element = element.and("t.status").is(expected.name());
+      }
+      var update = new Update().filterArray(element).set("tasks.$[t].lastModified", stamp);
+      fields.forEach((field, value) -> update.set("tasks.$[t]." + field, value));
+      update.set("lastModified", stamp).inc("version", 1);
+      bulk.updateOne(goal, update);
+    });
+    bulk.execute();
+    return stamped(goals.keySet(), taskIds, stamp);
+  }
+
+  // The bulk result only has totals, so the tasks this write changed are the
+  // requested ones that carry its stamp
+  private Map<String, Set<String>> stamped(Set<String> goalIds, Map<String, Set<String>> taskIds, Instant stamp) {
+    var query = Query.query(Criteria.where("id").in(goalIds));
+    query.fields().include("tasks.id", "tasks.lastModified");
+    var stamped = new HashMap<String, Set<String>>();
+    for (var goal : mt.find(query, Goal.class)) {
+      var wanted = taskIds.get(goal.getId());
+      goal.getTasks().stream()
+          .filter(t -> wanted.contains(t.getId()) && stamp.equals(t.getLastModified()))
+          .forEach(t -> stamped.computeIfAbsent(goal.getId(), g -> new HashSet<>()).add(t.getId()));
+    }
+    return stamped;
+  }
+
+  @Override
+  public Optional<Task> find(String goalId, String taskId) {
+    var query = Query.query(Criteria.where("id").is(goalId));
+    query.fields().elemMatch("tasks", Criteria.where("_id").is(taskId));
+    var goal = mt.findOne(query, Goal.class);
+    if (goal == null || goal.getTasks() == null) {
+      return Optional.empty();
+    }
+    return goal.getTasks().stream().findFirst();
+  }
+
+  @Override
+  public Map<String, Map<String, TaskStatus>> findStatuses(Map<String, Set<String>> taskIds) {
+    var query = Query.query(Criteria.where("id").in(taskIds.keySet()));
+    query.fields().include("tasks.id", "tasks.status");
+    var statuses = new HashMap<String, Map<String, TaskStatus>>();
+    for (var goal : mt.find(query, Goal.class)) {
+      var wanted = taskIds.get(goal.getId());
+      var byTask = new HashMap<String, TaskStatus>();
+      goal.getTasks().stream()
+          .filter(t -> wanted.contains(t.getId()))
+          .forEach(t -> byTask.put(t.getId(), t.getStatus()));
+      statuses.put(goal.getId(), byTask);
+    }
+    return statuses;
+  }
+
+  @Override
+  public List<Task> findByGoal(String goalId) {
+    var query = Query.query(Criteria.where("id").is(goalId));
+    query.fields().include("tasks");
+    var goal = mt.findOne(query, Goal.class);
+    return goal == null ? List.of() : goal.getTasks();
+  }
+
+  @Override
+  public Map<String, List<Task>> findByGoals(Collection<String> goalIds) {
+    var query = Query.query(Criteria.where("id").in(goalIds));
+    query.fields().include("tasks");
+    var tasks = new HashMap<String, List<Task>>();
+    mt.find(query, Goal.class).forEach(g -> tasks.put(g.getId(), g.getTasks()));
+    return tasks;
+  }
+
+  @Override
+  public List<Task> findDue(Instant before) {
+    var query = Query.query(Criteria.where("tasks").elemMatch(isDue(before)));
+    query.fields().include("tasks.id", "tasks.status", "tasks.deadline");
+    var due = new ArrayList<Task>();
+    for (var goal : mt.find(query, Goal.class)) {
+      goal.getTasks().stream()
+          .filter(t -> t.getStatus() == TaskStatus.NEW && t.getDeadline().isBefore(before))
+          .forEach(t -> {
+            t.setGoalId(goal.getId());
+            due.add(t);
+          });
+    }
+    return due;
+  }
+
+  @Override
+  public void markOverdue(Collection<String> goalIds, Instant now) {
+    var bulk = mt.bulkOps(BulkMode.UNORDERED, Goal.class);
+    for (var goalId : goalIds) {
+      var goal = Query.query(Criteria.where("id").is(goalId))
+          .addCriteria(Criteria.where("tasks").elemMatch(isDue(now.plusMillis(1))));
+      // Array filters are passed through unmapped, hence the raw values
+      var update = new Update().set("tasks.$[t].status", TaskStatus.OVERDUE)
+          .filterArray(Criteria.where("t.status").is(TaskStatus.NEW.name()).and("t.deadline").lte(Date.from(now)));
+      bulk.updateOne(goal, stamp(update));
+    }
+    bulk.execute();
+  }
+
+  @Override
+  public void deleteByGoal(String goalId) {
+    // Removed together with the goal
+  }
+
+  // Partial updates bypass the before save listener and the version check,
+  // so stamp and bump the goal version here
+  private boolean update(Query goal, Update update) {
+    return mt.updateFirst(goal, stamp(update), Goal.class).getMatchedCount() > 0;
+  }
+
+  private static Criteria isDue(Instant before) {
+    return Criteria.where("status").is(TaskStatus.NEW).and("deadline").lt(before);
+  }
+
+  private static Update stamp(Update update) {
+    return update.set("lastModified", Instant.now()).inc("version", 1);
+  }
+
+}
@@ -0,0 +1,53 @@
+package io.github.iamzaidsheikh.sprint.task.repo;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.data.mongodb.core.query.Query;
+
+import io.github.iamzaidsheikh.sprint.task.model.Task;
+import io.github.iamzaidsheikh.sprint.task.model.TaskStatus;
+
+// Where tasks live, selected with sprint.tasks.storage. Writes take the goal
+// preconditions as a query and return false when the goal or the task no
+// longer matches, leaving the caller to work out why.
+public interface TaskStore {
+
+  boolean storesTasksOnGoal();
+
+  boolean insert(Query goal, List<Task> tasks);
+
+  boolean update(Query goal, String goalId, String taskId, TaskStatus expected, Map<String, Object> fields);
+
+  boolean delete(Query goal, String goalId, String taskId);
+
+  // One bulk write covering every goal, stamping the tasks it changes with
+  // now; tasks no longer in the expected status, and goals that no longer
+  // match, are left untouched. Returns the ids of the tasks of each goal
+  // that this write changed.
+  Map<String, Set<String>> updateAll(Map<String, Query> goals, Map<String, Set<String>> taskIds,
+      TaskStatus expected, Map<String, Object> fields, Instant now);
+
+  Optional<Task> find(String goalId, String taskId);
+
+  // Status of each of the given tasks that exists, by goal id and task id
+  Map<String, Map<String, TaskStatus>> findStatuses(Map<String, Set<String>> taskIds);
+
+  List<Task> findByGoal(String goalId);
+
+  // Tasks of each of the given goals that has any, in one query
+  Map<String, List<Task>> findByGoals(Collection<String> goalIds);
+
+  // NEW tasks due before the given time, with goalId set in either mode
+  List<Task> findDue(Instant before);
+
+  // Moves NEW tasks of these goals whose deadline has passed to OVERDUE
+  void markOverdue(Collection<String> goalIds, Instant now);
+
+  void deleteByGoal(String goalId);
+
+}
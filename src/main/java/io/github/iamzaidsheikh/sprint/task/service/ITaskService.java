@@ -1,16 +1,24 @@
 package io.github.iamzaidsheikh.sprint.task.service;
 
+import java.util.List;
+
+import io.github.iamzaidsheikh.sprint.task.dto.ApprovalResult;
 import io.github.iamzaidsheikh.sprint.task.dto.SubmitTaskDTO;
 import io.github.iamzaidsheikh.sprint.task.dto.TaskDTO;
+import io.github.iamzaidsheikh.sprint.task.dto.TaskRefDTO;
 
 public interface ITaskService {
   String createTask(String goalId, String username, TaskDTO data);
 
+  List<String> createTasks(String goalId, String username, List<TaskDTO> data);
+
   String submitTask(String goalId, String taskId, String username, SubmitTaskDTO link);
 
   SubmitTaskDTO getSubmission(String goalId, String taskId, String username);
 
   String approveTask(String goalId, String taskId, String username);
 
+  List<ApprovalResult> approveTasks(String username, List<TaskRefDTO> tasks);
+
   String deleteTask(String goalId, String taskId, String username);
 }
@@ -1,16 +1,35 @@
 package io.github.iamzaidsheikh.sprint.task.service;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import io.github.iamzaidsheikh.sprint.common.OptimisticRetry;
+import io.github.iamzaidsheikh.sprint.deadline.DeadlineScheduler;
 import io.github.iamzaidsheikh.sprint.exception.BadRequestException;
 import io.github.iamzaidsheikh.sprint.exception.ResourceNotFoundException;
+import io.github.iamzaidsheikh.sprint.goal.model.GoalSummary;
+import io.github.iamzaidsheikh.sprint.goal.repo.GoalCache;
 import io.github.iamzaidsheikh.sprint.goal.repo.GoalRepo;
+import io.github.iamzaidsheikh.sprint.task.dto.ApprovalResult;
 import io.github.iamzaidsheikh.sprint.task.dto.SubmitTaskDTO;
 import io.github.iamzaidsheikh.sprint.task.dto.TaskDTO;
+import io.github.iamzaidsheikh.sprint.task.dto.TaskRefDTO;
 import io.github.iamzaidsheikh.sprint.task.model.Task;
 import io.github.iamzaidsheikh.sprint.task.model.TaskStatus;
+import io.github.iamzaidsheikh.sprint.task.repo.TaskStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -20,153 +39,280 @@ import lombok.extern.slf4j.Slf4j;
 public class TaskService implements ITaskService {
 
   private final GoalRepo gr;
+  private final TaskStore store;
+  private final GoalCache cache;
+  private final OptimisticRetry retry;
+  private final DeadlineScheduler deadlines;
 
   @Override
   public String createTask(String goalId, String username, TaskDTO data) {
-    var go = gr.findById(goalId);
-    var deadline = Instant.parse(data.getDeadline());
-    if (!go.isPresent()) {
-      log.error("Could not find goal: {}", goalId);
-      throw new ResourceNotFoundException("Could not find goal: " + goalId);
-    }
-    var goal = go.get();
-    if (!username.equals(goal.getAuthor()) && !username.equals(goal.getMentor1())
-        && !username.equals(goal.getMentor2())) {
-      log.error("User: {} is not the author or mentor of the goal: {}", username, goalId);
-      throw new BadRequestException("User: " + username + " is not the author or mentor of the goal: " + goalId);
-    }
-    if (deadline.isAfter(goal.getDeadline())) {
-      log.error("Cannot create a task after goal deadline");
-      throw new BadRequestException("Cannot create a task after goal deadline");
-    }
+    var taskId = retry.run("task.create", () -> attemptCreateTasks(goalId, username, List.of(data)).get(0));
+    cache.evict(goalId);
+    return taskId;
+  }
 
-    var tasks = goal.getTasks();
+  @Override
+  public List<String> createTasks(String goalId, String username, List<TaskDTO> data) {
+    var taskIds = retry.run("task.create-batch", () -> attemptCreateTasks(goalId, username, data));
+    cache.evict(goalId);
+    return taskIds;
+  }
 
-    var task = new Task(
-        data.getDesc(),
-        deadline,
-        username);
+  // All tasks go in with one write, guarded by the latest of their deadlines
+  private List<String> attemptCreateTasks(String goalId, String username, List<TaskDTO> data) {
+    var now = Instant.now();
+    var tasks = new ArrayList<Task>(data.size());
+    var latest = Instant.MIN;
+    for (var d : data) {
+      var deadline = Instant.parse(d.getDeadline());
+      var task = new Task(
+          d.getDesc(),
+          deadline,
+          username);
+      task.setCreatedAt(now);
+      task.setLastModified(now);
+      if (!store.storesTasksOnGoal()) {
+        task.setGoalId(goalId);
+      }
+      tasks.add(task);
+      if (deadline.isAfter(latest)) {
+        latest = deadline;
+      }
+    }
 
-    tasks.add(0, task);
-    goal.setTasks(tasks);
-    gr.save(goal);
-    log.info("Added task: {} to goal: {}", task.getId(), goalId);
+    var query = byId(goalId)
+        .addCriteria(isParticipant(username))
+        .addCriteria(Criteria.where("deadline").gte(latest));
+    if (!store.insert(query, tasks)) {
+      var goal = findSummary(goalId);
+      requireParticipant(goal, username, "the author or mentor of the goal");
+      if (latest.isAfter(goal.getDeadline())) {
+        log.error("Cannot create a task after goal deadline");
+        throw new BadRequestException("Cannot create a task after goal deadline");
+      }
+      throw conflict(goalId);
+    }
+    tasks.stream().map(Task::getDeadline).distinct().forEach(d -> deadlines.scheduleTasks(goalId, d));
+    var taskIds = tasks.stream().map(Task::getId).collect(Collectors.toList());
+    log.info("Added tasks: {} to goal: {}", taskIds, goalId);
 
-    return task.getId();
+    return taskIds;
   }
 
   @Override
   public String submitTask(String goalId, String taskId, String username, SubmitTaskDTO submission) {
-    var go = gr.findById(goalId);
-    if (go.isEmpty()) {
-      log.error("Could not find goal: {}", goalId);
-      throw new ResourceNotFoundException("Could not find goal: " + goalId);
-    }
-    var goal = go.get();
-    if (!goal.getAuthor().equals(username)) {
-      log.error("User: {} is not the author of goal: {}", username, goalId);
-      throw new BadRequestException("User: " + username + " is not the author of goal: " + goalId);
-    }
-    var tasks = goal.getTasks();
-    var to = tasks.stream().findFirst().filter(t -> t.getId().equals(taskId));
-    if (to.isEmpty()) {
-      log.error("Could not find task: {}", taskId);
-      throw new ResourceNotFoundException("Could not find task: " + taskId);
+    retry.run("task.submit", () -> attemptSubmitTask(goalId, taskId, username, submission));
+    cache.evict(goalId);
+    return goalId;
+  }
+
+  private String attemptSubmitTask(String goalId, String taskId, String username, SubmitTaskDTO submission) {
+    var query = byId(goalId).addCriteria(Criteria.where("author").is(username));
+    var fields = Map.<String, Object>of(
+        "submission", submission,
+        "status", TaskStatus.PENDING,
+        "lastModified", Instant.now());
+    if (!store.update(query, goalId, taskId, null, fields)) {
+      var goal = findSummary(goalId);
+      if (!goal.getAuthor().equals(username)) {
+        log.error("User: {} is not the author of goal: {}", username, goalId);
+        throw new BadRequestException("User: " + username + " is not the author of goal: " + goalId);
+      }
+      findTask(goalId, taskId);
+      throw conflict(goalId);
     }
-    var task = to.get();
-    var index = tasks.indexOf(task);
-    task.setSubmission(submission);
-    task.setStatus(TaskStatus.PENDING);
     log.info("Added a new submission to task: {}", taskId);
-    tasks.set(index, task);
-    goal.setTasks(tasks);
-    return gr.save(goal).getId();
+
+    return goalId;
   }
 
   @Override
   public String approveTask(String goalId, String taskId, String username) {
-    var go = gr.findById(goalId);
-    if (go.isEmpty()) {
-      log.error("Could not find goal: {}", goalId);
-      throw new ResourceNotFoundException("Could not find goal: " + goalId);
+    retry.run("task.approve", () -> attemptApproveTask(goalId, taskId, username));
+    cache.evict(goalId);
+    return goalId;
+  }
+
+  private String attemptApproveTask(String goalId, String taskId, String username) {
+    var query = byId(goalId).addCriteria(isMentor(username));
+    var fields = Map.<String, Object>of(
+        "status", TaskStatus.COMPLETED,
+        "lastModified", Instant.now());
+    if (!store.update(query, goalId, taskId, TaskStatus.PENDING, fields)) {
+      var goal = findSummary(goalId);
+      if (!username.equals(goal.getMentor1()) && !username.equals(goal.getMentor2())) {
+        log.error("User: {} is not a mentor of goal: {}", username, goalId);
+        throw new BadRequestException("User: " + username + " is not a mentor of goal: " + goalId);
+      }
+      requirePending(findTask(goalId, taskId));
+      throw conflict(goalId);
     }
-    var goal = go.get();
-    if (!username.equals(goal.getMentor1()) && !username.equals(goal.getMentor2())) {
-      log.error("User: {} is not a mentor of goal: {}", username, goalId);
-      throw new BadRequestException("User: " + username + " is not a mentor of goal: " + goalId);
+    log.info("User: {} approved task: {}", username, taskId);
+
+    return goalId;
+  }
+
+  @Override
+  public List<ApprovalResult> approveTasks(String username, List<TaskRefDTO> tasks) {
+    var taskIds = new LinkedHashMap<String, Set<String>>();
+    tasks.forEach(t -> taskIds.computeIfAbsent(t.getGoalId(), g -> new LinkedHashSet<>()).add(t.getTaskId()));
+
+    // Mentor rights are checked once per goal
+    var goals = gr.findSummaryByIdIn(taskIds.keySet()).stream()
+        .collect(Collectors.toMap(GoalSummary::getId, Function.identity()));
+    var errors = new HashMap<String, String>();
+    var allowed = new LinkedHashMap<String, Set<String>>();
+    taskIds.forEach((goalId, ids) -> {
+      var goal = goals.get(goalId);
+      if (goal == null) {
+        errors.put(goalId, "Could not find goal: " + goalId);
+      } else if (!username.equals(goal.getMentor1()) && !username.equals(goal.getMentor2())) {
+        errors.put(goalId, "User: " + username + " is not a mentor of goal: " + goalId);
+      } else {
+        allowed.put(goalId, ids);
+      }
+    });
+
+    var statuses = allowed.isEmpty() ? Map.<String, Map<String, TaskStatus>>of() : store.findStatuses(allowed);
+    var pending = new LinkedHashMap<String, Set<String>>();
+    var itemErrors = new ArrayList<String>(tasks.size());
+    for (var t : tasks) {
+      var goalId = t.getGoalId();
+      var taskId = t.getTaskId();
+      var error = errors.get(goalId);
+      if (error == null) {
+        var status = statuses.getOrDefault(goalId, Map.of()).get(taskId);
+        if (status == null) {
+          error = "Could not find task: " + taskId;
+        } else if (!status.equals(TaskStatus.PENDING)) {
+          error = "There is no submission for task: " + taskId;
+        } else {
+          pending.computeIfAbsent(goalId, g -> new LinkedHashSet<>()).add(taskId);
+        }
+      }
+      itemErrors.add(error);
     }
-    var tasks = goal.getTasks();
-    var to = tasks.stream().findFirst().filter(t -> t.getId().equals(taskId));
-    if (to.isEmpty()) {
-      log.error("Could not find task: {}", taskId);
-      throw new ResourceNotFoundException("Could not find task: " + taskId);
+
+    var approved = Map.<String, Set<String>>of();
+    if (!pending.isEmpty()) {
+      var queries = new LinkedHashMap<String, Query>();
+      pending.keySet().forEach(goalId -> queries.put(goalId, byId(goalId).addCriteria(isMentor(username))));
+      var fields = Map.<String, Object>of("status", TaskStatus.COMPLETED);
+      approved = store.updateAll(queries, pending, TaskStatus.PENDING, fields, Instant.now());
+      pending.keySet().forEach(cache::evict);
     }
-    var task = to.get();
-    if (!task.getStatus().equals(TaskStatus.PENDING)) {
-      log.error("There is no submission for task: {}", taskId);
-      throw new ResourceNotFoundException("There is no submission for task: " + taskId);
+
+    // Tasks that were pending when read but not written by the update were
+    // changed in between, by another mentor or because the mentor left
+    var results = new ArrayList<ApprovalResult>(tasks.size());
+    for (int i = 0; i < tasks.size(); i++) {
+      var goalId = tasks.get(i).getGoalId();
+      var taskId = tasks.get(i).getTaskId();
+      var error = itemErrors.get(i);
+      if (error == null && !approved.getOrDefault(goalId, Set.of()).contains(taskId)) {
+        error = "Goal: " + goalId + " was modified concurrently";
+      }
+      if (error != null) {
+        log.error("Could not approve task: {} of goal: {}: {}", taskId, goalId, error);
+      }
+      results.add(new ApprovalResult(goalId, taskId, error == null, error));
     }
-    task.setStatus(TaskStatus.COMPLETED);
-    var index = tasks.indexOf(task);
-    log.error("User: {} approved task: {}", username, taskId);
-    tasks.set(index, task);
-    goal.setTasks(tasks);
-    return gr.save(goal).getId();
+    log.info("User: {} approved {} of {} tasks", username,
+        approved.values().stream().mapToInt(Set::size).sum(), tasks.size());
+
+    return results;
   }
 
   @Override
   public SubmitTaskDTO getSubmission(String goalId, String taskId, String username) {
-    var go = gr.findById(goalId);
+    var go = cache.findSummary(goalId);
     if (go.isEmpty()) {
       log.error("Could not find goal: {}", goalId);
       throw new ResourceNotFoundException("Could not find goal: " + goalId);
     }
     var goal = go.get();
+    requireParticipant(goal, username, "a mentor or author of goal");
+    var task = findTask(goalId, taskId);
+    requirePending(task);
+    log.info("Fetching submission for task: {}", taskId);
+    return task.getSubmission();
+  }
+
+  @Override
+  public String deleteTask(String goalId, String taskId, String username) {
+    retry.run("task.delete", () -> attemptDeleteTask(goalId, taskId, username));
+    cache.evict(goalId);
+    return goalId;
+  }
+
+  private String attemptDeleteTask(String goalId, String taskId, String username) {
+    var query = byId(goalId).addCriteria(isParticipant(username));
+    if (!store.delete(query, goalId, taskId)) {
+      var goal = findSummary(goalId);
+      requireParticipant(goal, username, "a mentor or author of goal");
+      findTask(goalId, taskId);
+      throw conflict(goalId);
+    }
+    log.info("User: {} removed task: {}", username, taskId);
+
+    return goalId;
+  }
+
+  private void requireParticipant(GoalSummary goal, String username, String role) {
     if (!username.equals(goal.getMentor1()) && !username.equals(goal.getMentor2())
         && !username.equals(goal.getAuthor())) {
-      log.error("User: {} is not a mentor or author of goal: {}", username, goalId);
-      throw new BadRequestException("User: " + username + " is not a mentor or author of goal: " + goalId);
+      log.error("User: {} is not {}: {}", username, role, goal.getId());
+      throw new BadRequestException("User: " + username + " is not " + role + ": " + goal.getId());
     }
-    var tasks = goal.getTasks();
-    var to = tasks.stream().findFirst().filter(t -> t.getId().equals(taskId));
-    if (to.isEmpty()) {
-      log.error("Could not find task: {}", taskId);
-      throw new ResourceNotFoundException("Could not find task: " + taskId);
-    }
-    var task = to.get();
+  }
+
+  private void requirePending(Task task) {
     if (!task.getStatus().equals(TaskStatus.PENDING)) {
-      log.error("There is no submission for task: {}", taskId);
-      throw new ResourceNotFoundException("There is no submission for task: " + taskId);
+      log.error("There is no submission for task: {}", task.getId());
+      throw new ResourceNotFoundException("There is no submission for task: " + task.getId());
     }
-    log.info("Fetching submission for task: {}", taskId);
-    return task.getSubmission();
   }
 
-  @Override
-  public String deleteTask(String goalId, String taskId, String username) {
-    var go = gr.findById(goalId);
+  // None of the preconditions failed on re-read, so the goal changed between
+  // the conditional write and the re-read
+  private RuntimeException conflict(String goalId) {
+    log.error("Goal: {} was modified concurrently", goalId);
+    return new OptimisticLockingFailureException("Goal: " + goalId + " was modified concurrently");
+  }
+
+  private static Criteria isMentor(String username) {
+    return new Criteria().orOperator(
+        Criteria.where("mentor1").is(username),
+        Criteria.where("mentor2").is(username));
+  }
+
+  private static Criteria isParticipant(String username) {
+    return new Criteria().orOperator(
+        Criteria.where("author").is(username),
+        Criteria.where("mentor1").is(username),
+        Criteria.where("mentor2").is(username));
+  }
+
+  private static Query byId(String goalId) {
+    return Query.query(Criteria.where("id").is(goalId));
+  }
+
+  private GoalSummary findSummary(String goalId) {
+    var go = gr.findSummaryById(goalId);
     if (go.isEmpty()) {
       log.error("Could not find goal: {}", goalId);
       throw new ResourceNotFoundException("Could not find goal: " + goalId);
     }
-    var goal = go.get();
-    if (!username.equals(goal.getMentor1()) && !username.equals(goal.getMentor2())
-        && !username.equals(goal.getAuthor())) {
-      log.error("User: {} is not a mentor or author of goal: {}", username, goalId);
-      throw new BadRequestException("User: " + username + " is not a mentor or author of goal: " + goalId);
-    }
-    var tasks = goal.getTasks();
-    var to = tasks.stream().findFirst().filter(t -> t.getId().equals(taskId));
+    return go.get();
+  }
+
+  private Task findTask(String goalId, String taskId) {
+    var to = store.find(goalId, taskId);
     if (to.isEmpty()) {
       log.error("Could not find task: {}", taskId);
       throw new ResourceNotFoundException("Could not find task: " + taskId);
     }
-    var task = to.get();
-    var index = tasks.indexOf(task);
-    tasks.remove(index);
-    goal.setTasks(tasks);
-    log.info("User: {} removed task: {}", username, taskId);
-    return gr.save(goal).getId();
+    return to.get();
   }
 
 }
@@ -0,0 +1,96 @@
+package io.github.iamzaidsheikh.sprint.threads;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Whether requests, and the blocking Mongo calls made for them, run on
+// platform threads as by default or on virtual threads. Virtual threads need
+// Java 21 and are created reflectively so the build keeps targeting 17, the
+// runtime pinned in system.properties; asking for them on an older runtime
+// fails on startup rather than falling back to platform threads.
+@Slf4j
+@Component
+public class ExecutionMode {
+
+  public enum Mode {
+    PLATFORM,
+    VIRTUAL
+  }
+
+  private final Mode mode;
+  private final ExecutorService virtualThreads;
+
+  public ExecutionMode(@Value("${sprint.threads.mode:platform}") Mode mode) {
+    this.mode = mode;
+    if (mode == Mode.VIRTUAL) {
+      requireVirtualThreads(Runtime.version());
+    }
+    this.virtualThreads = mode == Mode.VIRTUAL ? newVirtualThreadPerTaskExecutor() : null;
+    log.info("Running requests on {} threads", mode.name().toLowerCase());
+  }
+
+  @PreDestroy
+  void stop() {
+    if (virtualThreads != null) {
+      virtualThreads.shutdown();
+    }
+  }
+
+  public boolean isVirtual() {
+    return mode == Mode.VIRTUAL;
+  }
+
+  // A new virtual thread per task
+  public ExecutorService virtualThreads() {
+    if (virtualThreads == null) {
+      throw new IllegalStateException("Virtual threads are only used in virtual mode");
+    }
+    return virtualThreads;
+  }
+
+  // Where cache loads run. On a platform thread the caller loads in place; a
+  // virtual thread would be pinned while the cache holds its lock, so the
+  // load moves to a thread of its own and the caller parks until it is done.
+  public Executor loader() {
+    return virtualThreads == null ? Runnable::run : virtualThreads;
+  }
+
+  // Rethrows what the load threw rather than a CompletionException
+  public static <V> V await(CompletableFuture<V> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  // Java 19 and 20 have the factory method as a preview that throws unless
+  // previews are enabled, so check the version rather than the method
+  static void requireVirtualThreads(Runtime.Version version) {
+    if (version.feature() < 21) {
+      throw new IllegalStateException("sprint.threads.mode=virtual needs Java 21 or later, running on: " + version
+          + ". Set sprint.threads.mode=platform or upgrade the runtime.");
+    }
+  }
+
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Virtual threads need Java 21 or later, running on: " + Runtime.version(), e);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package io.github.iamzaidsheikh.sprint.threads;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+// Reports virtual threads that blocked while pinned to their carrier, which
+// is what a synchronized block or a native frame around a blocking call does,
+// for longer than the threshold. Each one is counted by the first frame
+// outside the JDK, so the driver or application code holding the monitor is
+// visible in the metrics, and logged with its stack.
+@Slf4j
+@ConditionalOnProperty(name = "sprint.threads.mode", havingValue = "virtual")
+@Component
+public class PinnedThreadMonitor {
+
+  private static final String EVENT = "jdk.VirtualThreadPinned";
+  private static final int LOGGED_FRAMES = 12;
+
+  private final MeterRegistry registry;
+  private final Duration threshold;
+  private RecordingStream stream;
+
+  public PinnedThreadMonitor(MeterRegistry registry,
+      @Value("${sprint.threads.pinned-threshold:20ms}") Duration threshold) {
+    this.registry = registry;
+    this.threshold = threshold;
+  }
+
+  @PostConstruct
+  void start() {
+    stream = new RecordingStream();
+    stream.enable(EVENT).withThreshold(threshold).withStackTrace();
+    stream.onEvent(EVENT, this::onPinned);
+    stream.startAsync();
+  }
+
+  @PreDestroy
+  void stop() {
+    stream.close();
+  }
+
+  private void onPinned(RecordedEvent event) {
+    var frames = event.getStackTrace() == null ? List.<RecordedFrame>of() : event.getStackTrace().getFrames();
+    var culprit = frames.stream()
+        .map(PinnedThreadMonitor::describe)
+        .filter(f -> !f.startsWith("java.") && !f.startsWith("jdk.") && !f.startsWith("sun."))
+        .findFirst()
+        .orElse("unknown");
+    registry.counter("sprint.threads.pinned", "frame", culprit).increment();
+    log.warn("Virtual thread pinned for {}ms at: {}\n\t{}", event.getDuration().toMillis(), culprit,
+        frames.stream().limit(LOGGED_FRAMES).map(PinnedThreadMonitor::describe).collect(Collectors.joining("\n\t")));
+  }
+
+  private static String describe(RecordedFrame frame) {
+    var method = frame.getMethod();
+    return method.getType().getName() + "." + method.getName();
+  }
+}
@@ -0,0 +1,20 @@
+package io.github.iamzaidsheikh.sprint.threads;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Hands Tomcat's request processing to virtual threads in place of its
+// worker pool, so server.tomcat.threads no longer caps concurrent requests;
+// connections are still capped by server.tomcat.max-connections.
+@ConditionalOnProperty(name = "sprint.threads.mode", havingValue = "virtual")
+@Configuration
+public class VirtualThreadConfig {
+
+  @Bean
+  public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadExecutor(ExecutionMode mode) {
+    return factory -> factory.addProtocolHandlerCustomizers(handler -> handler.setExecutor(mode.virtualThreads()));
+  }
+}
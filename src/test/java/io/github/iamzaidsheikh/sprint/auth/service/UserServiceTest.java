@@ -11,6 +11,7 @@ import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.security.crypto.factory.PasswordEncoderFactories;
 
 import io.github.iamzaidsheikh.sprint.auth.dto.UserDTO;
@@ -18,6 +19,7 @@ import io.github.iamzaidsheikh.sprint.auth.model.User;
 import io.github.iamzaidsheikh.sprint.auth.repo.UserRepo;
 import io.github.iamzaidsheikh.sprint.exception.UsernameAlreadyExistsException;
 import io.github.iamzaidsheikh.sprint.goal.repo.GoalRepo;
+import io.github.iamzaidsheikh.sprint.profile.repo.ProfileCache;
 import io.github.iamzaidsheikh.sprint.profile.repo.UserProfileRepo;
 import io.github.iamzaidsheikh.sprint.profile.service.UserProfileService;
 
@@ -30,12 +32,16 @@ public class UserServiceTest {
   private UserProfileRepo upr;
   @Mock
   private GoalRepo gr;
+  @Mock
+  private ProfileCache pc;
+  @Mock
+  private MongoTemplate mt;
 
   @BeforeEach
   void setUp() {
     ac = MockitoAnnotations.openMocks(this);
     underTest = new UserService(ur, PasswordEncoderFactories.createDelegatingPasswordEncoder(),
-        new UserProfileService(upr));
+        new UserProfileService(upr, pc, mt));
   }
 
   @AfterEach
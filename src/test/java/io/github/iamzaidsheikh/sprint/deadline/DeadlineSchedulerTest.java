@@ -0,0 +1,149 @@
+package io.github.iamzaidsheikh.sprint.deadline;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.client.result.UpdateResult;
+
+import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.goal.model.GoalStatus;
+import io.github.iamzaidsheikh.sprint.goal.repo.GoalCache;
+import io.github.iamzaidsheikh.sprint.task.model.Task;
+import io.github.iamzaidsheikh.sprint.task.repo.TaskStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class DeadlineSchedulerTest {
+
+  private DeadlineScheduler underTest;
+  @Mock
+  private MongoTemplate mt;
+  @Mock
+  private TaskStore store;
+  @Mock
+  private GoalCache cache;
+  private SimpleMeterRegistry registry;
+  private AutoCloseable ac;
+
+  @BeforeEach
+  void setUp() {
+    ac = MockitoAnnotations.openMocks(this);
+    registry = new SimpleMeterRegistry();
+    underTest = new DeadlineScheduler(mt, store, cache, registry, Duration.ofHours(1), 100);
+    when(mt.updateMulti(any(Query.class), any(Update.class), eq(Goal.class)))
+        .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    ac.close();
+  }
+
+  private static Goal goal(String id, Instant deadline) {
+    var goal = new Goal("testAuthor", deadline, "Test Title", "Test Desc");
+    goal.setId(id);
+    return goal;
+  }
+
+  private double pending() {
+    return registry.get("sprint.deadlines.pending").gauge().value();
+  }
+
+  @Test
+  void testTickMarksPassedDeadlinesOverdue() {
+    // given
+    var now = Instant.now();
+    var task = new Task("Test Desc", now.minusSeconds(60), "testAssignee");
+    task.setGoalId("b");
+    // when
+    when(mt.find(any(Query.class), eq(Goal.class)))
+        .thenReturn(List.of(goal("a", now.minusSeconds(60)), goal("c", now.plusSeconds(600))));
+    when(store.findDue(any(Instant.class))).thenReturn(List.of(task));
+    underTest.tick();
+    // then
+    ArgumentCaptor<Query> qac = ArgumentCaptor.forClass(Query.class);
+    ArgumentCaptor<Update> uac = ArgumentCaptor.forClass(Update.class);
+    verify(mt).updateMulti(qac.capture(), uac.capture(), eq(Goal.class));
+    assertThat(qac.getValue().getQueryObject().get("status")).isEqualTo(GoalStatus.IN_PROGRESS);
+    assertThat(uac.getValue().getUpdateObject().get("$set", Document.class).get("status"))
+        .isEqualTo(GoalStatus.OVERDUE);
+    verify(store).markOverdue(eq(Set.of("b")), any(Instant.class));
+    verify(cache).evict("a");
+    verify(cache).evict("b");
+    verify(cache, never()).evict("c");
+    assertThat(pending()).isEqualTo(1);
+  }
+
+  @Test
+  void testScheduleOnlyKeepsDeadlinesWithinHorizon() {
+    // given
+    var now = Instant.now();
+    // when
+    underTest.load(now);
+    underTest.scheduleGoal("a", now.plusSeconds(60));
+    underTest.scheduleTasks("a", now.plusSeconds(120));
+    underTest.scheduleGoal("b", now.plus(Duration.ofHours(2)));
+    // then
+    assertThat(pending()).isEqualTo(2);
+  }
+
+  @Test
+  void testFailedTimersAreRetried() {
+    // given
+    var now = Instant.now();
+    underTest.load(now);
+    underTest.scheduleGoal("a", now.minusSeconds(1));
+    // when
+    when(mt.updateMulti(any(Query.class), any(Update.class), eq(Goal.class)))
+        .thenThrow(new IllegalStateException("Write failed"));
+    underTest.tick();
+    // then
+    assertThat(pending()).isEqualTo(1);
+    assertThat(registry.counter("sprint.deadlines.failures").count()).isEqualTo(1);
+    verify(store, never()).markOverdue(anyCollection(), any(Instant.class));
+  }
+
+  @Test
+  void testFailedLoadIsRetriedFromTheSameHorizon() {
+    // given
+    var now = Instant.now();
+    var horizon = now.plus(Duration.ofHours(1));
+    when(mt.find(any(Query.class), eq(Goal.class))).thenReturn(List.of());
+    underTest.load(now);
+    // when
+    when(mt.find(any(Query.class), eq(Goal.class)))
+        .thenThrow(new IllegalStateException("Read failed"))
+        .thenReturn(List.of(goal("a", horizon.plusSeconds(60))));
+    assertThatThrownBy(() -> underTest.load(now.plusSeconds(60))).isInstanceOf(IllegalStateException.class);
+    underTest.load(now.plusSeconds(120));
+    // then
+    ArgumentCaptor<Query> qac = ArgumentCaptor.forClass(Query.class);
+    verify(mt, times(3)).find(qac.capture(), eq(Goal.class));
+    var retried = qac.getAllValues().get(2).getQueryObject().get("deadline", Document.class);
+    assertThat(retried.get("$gte")).isEqualTo(horizon);
+    assertThat(pending()).isEqualTo(1);
+  }
+
+}
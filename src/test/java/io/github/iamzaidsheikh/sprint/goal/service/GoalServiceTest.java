@@ -2,14 +2,23 @@ package io.github.iamzaidsheikh.sprint.goal.service;
 
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.assertj.core.api.AssertionsForClassTypes;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,24 +26,67 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.data.util.CloseableIterator;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mongodb.client.result.UpdateResult;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import io.github.iamzaidsheikh.sprint.common.CursorCodec;
+import io.github.iamzaidsheikh.sprint.common.OptimisticRetry;
+import io.github.iamzaidsheikh.sprint.deadline.DeadlineScheduler;
 import io.github.iamzaidsheikh.sprint.exception.BadRequestException;
 import io.github.iamzaidsheikh.sprint.exception.ResourceNotFoundException;
+import io.github.iamzaidsheikh.sprint.goal.dto.GoalDTO;
+import io.github.iamzaidsheikh.sprint.goal.event.GoalDeletedEvent;
 import io.github.iamzaidsheikh.sprint.goal.model.Goal;
 import io.github.iamzaidsheikh.sprint.goal.model.GoalStatus;
+import io.github.iamzaidsheikh.sprint.goal.model.GoalSummary;
+import io.github.iamzaidsheikh.sprint.goal.model.OutboxEntry;
+import io.github.iamzaidsheikh.sprint.goal.model.OutboxType;
+import io.github.iamzaidsheikh.sprint.goal.repo.GoalCache;
 import io.github.iamzaidsheikh.sprint.goal.repo.GoalRepo;
+import io.github.iamzaidsheikh.sprint.task.model.Task;
+import io.github.iamzaidsheikh.sprint.task.repo.TaskStore;
 
 public class GoalServiceTest {
 
   private GoalService underTest;
   @Mock
   private GoalRepo gr;
+  @Mock
+  private MongoTemplate mt;
+  @Mock
+  private TaskStore store;
+  @Mock
+  private GoalCache cache;
+  @Mock
+  private ApplicationEventPublisher publisher;
+  @Mock
+  private DeadlineScheduler deadlines;
   private AutoCloseable ac;
+  private SimpleMeterRegistry registry;
+  private final SpelAwareProxyProjectionFactory pf = new SpelAwareProxyProjectionFactory();
 
   @BeforeEach
   void setUp() {
     ac = MockitoAnnotations.openMocks(this);
-    underTest = new GoalService(gr);
+    registry = new SimpleMeterRegistry();
+    underTest = new GoalService(gr, mt, new ObjectMapper().registerModule(new JavaTimeModule()),
+        new OptimisticRetry(registry, 3, Duration.ZERO, Duration.ZERO), store, cache, publisher, deadlines);
+    when(store.storesTasksOnGoal()).thenReturn(true);
+    // Conditional writes match nothing unless a test says otherwise
+    when(mt.updateFirst(any(Query.class), any(Update.class), eq(Goal.class)))
+        .thenReturn(UpdateResult.acknowledged(0, 0L, null));
   }
 
   @AfterEach
@@ -42,12 +94,189 @@ public class GoalServiceTest {
     ac.close();
   }
 
+  private GoalSummary summary(Goal goal) {
+    return pf.createProjection(GoalSummary.class, goal);
+  }
+
+  private void givenUpdateMatches() {
+    when(mt.updateFirst(any(Query.class), any(Update.class), eq(Goal.class)))
+        .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+  }
+
+  private Document capturedSet() {
+    ArgumentCaptor<Update> uac = ArgumentCaptor.forClass(Update.class);
+    verify(mt).updateFirst(any(Query.class), uac.capture(), eq(Goal.class));
+    return uac.getValue().getUpdateObject().get("$set", Document.class);
+  }
+
+  @Test
+  void testShouldReturnFirstPageOfGoals() {
+    // given
+    var first = new Goal("test author", Instant.now(), "test title", "test desc");
+    first.setId(new ObjectId().toHexString());
+    var second = new Goal("test author", Instant.now(), "test title", "test desc");
+    second.setId(new ObjectId().toHexString());
+    // when
+    when(gr.findAllBy(any(Pageable.class))).thenReturn(List.of(first, second));
+    var page = underTest.getAllGoals(null, 1);
+    // then
+    ArgumentCaptor<Pageable> pac = ArgumentCaptor.forClass(Pageable.class);
+    verify(gr).findAllBy(pac.capture());
+    AssertionsForClassTypes.assertThat(pac.getValue().getPageSize()).isEqualTo(2);
+    AssertionsForClassTypes.assertThat(page.getItems().size()).isEqualTo(1);
+    AssertionsForClassTypes.assertThat(page.getNext()).isEqualTo(CursorCodec.encode(first.getId()));
+  }
+
+  @Test
+  void testShouldReturnPageOfGoalsAfterCursor() {
+    // given
+    var lastId = new ObjectId();
+    var goal = new Goal("test author", Instant.now(), "test title", "test desc");
+    goal.setId(new ObjectId().toHexString());
+    // when
+    when(gr.findByIdGreaterThan(eq(lastId), any(Pageable.class))).thenReturn(List.of(goal));
+    var page = underTest.getAllGoals(CursorCodec.encode(lastId.toHexString()), 10);
+    // then
+    assertSame(goal, page.getItems().get(0));
+    AssertionsForClassTypes.assertThat(page.getNext()).isNull();
+  }
+
+  @Test
+  void testShouldRejectInvalidCursor() {
+    AssertionsForClassTypes.assertThatThrownBy(() -> underTest.getAllGoals(CursorCodec.encode("notAnId"), 10))
+        .isInstanceOf(BadRequestException.class)
+        .hasMessageContaining("Invalid cursor");
+  }
+
+  @Test
+  void testShouldRejectInvalidLimit() {
+    AssertionsForClassTypes.assertThatThrownBy(() -> underTest.getAllGoals(null, GoalService.MAX_PAGE_SIZE + 1))
+        .isInstanceOf(BadRequestException.class)
+        .hasMessageContaining("Limit must be between 1 and " + GoalService.MAX_PAGE_SIZE);
+  }
+
+  @Test
+  void testShouldSearchGoalsByRelevance() {
+    // given
+    var goal = new Goal("test author", Instant.now(), "learn spanish", "test desc");
+    // when
+    when(mt.find(any(Query.class), eq(Goal.class))).thenReturn(List.of(goal));
+    var goals = underTest.searchGoals("spanish", 20, 10);
+    // then
+    ArgumentCaptor<Query> qac = ArgumentCaptor.forClass(Query.class);
+    verify(mt).find(qac.capture(), eq(Goal.class));
+    var query = qac.getValue();
+    AssertionsForClassTypes.assertThat(query.getQueryObject().get("$text", Document.class).get("$search"))
+        .isEqualTo("spanish");
+    AssertionsForClassTypes.assertThat(query.getSortObject().containsKey("score")).isTrue();
+    AssertionsForClassTypes.assertThat(query.getSkip()).isEqualTo(20);
+    AssertionsForClassTypes.assertThat(query.getLimit()).isEqualTo(10);
+    AssertionsForClassTypes.assertThat(query.getFieldsObject().containsKey("tasks")).isFalse();
+    AssertionsForClassTypes.assertThat(query.getFieldsObject().containsKey("openSlots")).isTrue();
+    assertSame(goal, goals.get(0));
+  }
+
+  @Test
+  void testShouldRejectBlankSearchText() {
+    AssertionsForClassTypes.assertThatThrownBy(() -> underTest.searchGoals(" ", 0, 10))
+        .isInstanceOf(BadRequestException.class)
+        .hasMessageContaining("Search text must not be empty");
+  }
+
+  @Test
+  void testShouldMergeDueSoonGoalsOfBothRolesByDeadline() {
+    // given
+    var user = "testUser";
+    var now = Instant.now();
+    var authored = new Goal(user, now.plusSeconds(60 * 60 * 48), "test title", "test desc");
+    authored.setId("a");
+    var mentored = new Goal("testAuthor", now.plusSeconds(60 * 60), "test title", "test desc");
+    mentored.setId("m");
+    var task = new Task("Test Desc", now.plusSeconds(60), "testAuthor");
+    // when
+    when(gr.findDueByAuthor(eq(user), eq(GoalStatus.IN_PROGRESS), any(Instant.class), any(Instant.class)))
+        .thenReturn(List.of(authored));
+    when(gr.findDueByMentor(eq(user), eq(GoalStatus.IN_PROGRESS), any(Instant.class), any(Instant.class)))
+        .thenReturn(List.of(mentored));
+    when(store.storesTasksOnGoal()).thenReturn(false);
+    when(store.findByGoals(List.of("m", "a"))).thenReturn(Map.of("m", List.of(task)));
+    var goals = underTest.getDueSoon(user, 7);
+    // then
+    AssertionsForClassTypes.assertThat(goals.stream().map(Goal::getId).collect(Collectors.toList()))
+        .isEqualTo(List.of("m", "a"));
+    AssertionsForClassTypes.assertThat(goals.get(0).getTasks()).isEqualTo(List.of(task));
+    AssertionsForClassTypes.assertThat(goals.get(1).getTasks()).isEqualTo(List.of());
+  }
+
+  @Test
+  void testShouldRejectInvalidDueSoonWindow() {
+    AssertionsForClassTypes.assertThatThrownBy(() -> underTest.getDueSoon("testUser", GoalService.MAX_DUE_DAYS + 1))
+        .isInstanceOf(BadRequestException.class)
+        .hasMessageContaining("Days must be between 1 and " + GoalService.MAX_DUE_DAYS);
+  }
+
   @Test
-  void testShouldReturnAllGoals() {
+  void testShouldReturnOpenGoalsAfterCursor() {
+    // given
+    var deadline = Instant.ofEpochMilli(1_700_000_000_000L);
+    var lastId = new ObjectId();
+    var first = new Goal("test author", deadline, "test title", "test desc");
+    first.setId(new ObjectId().toHexString());
+    var second = new Goal("test author", deadline.plusSeconds(60), "test title", "test desc");
+    second.setId(new ObjectId().toHexString());
     // when
-    underTest.getAllGoals();
+    when(mt.find(any(Query.class), eq(Goal.class))).thenReturn(List.of(first, second));
+    var page = underTest.getOpenGoals(CursorCodec.encode(String.valueOf(deadline.toEpochMilli()), lastId.toHexString()), 1);
     // then
-    verify(gr).findAll();
+    ArgumentCaptor<Query> qac = ArgumentCaptor.forClass(Query.class);
+    verify(mt).find(qac.capture(), eq(Goal.class));
+    var query = qac.getValue().getQueryObject();
+    AssertionsForClassTypes.assertThat(query.get("status")).isEqualTo(GoalStatus.IN_PROGRESS);
+    AssertionsForClassTypes.assertThat(query.get("openSlots", Document.class).get("$gt")).isEqualTo(0);
+    AssertionsForClassTypes.assertThat(query.get("deadline", Document.class).get("$gte")).isEqualTo(deadline);
+    AssertionsForClassTypes.assertThat(qac.getValue().getLimit()).isEqualTo(2);
+    AssertionsForClassTypes.assertThat(page.getItems()).isEqualTo(List.of(first));
+    AssertionsForClassTypes.assertThat(page.getNext())
+        .isEqualTo(CursorCodec.encode(String.valueOf(deadline.toEpochMilli()), first.getId()));
+  }
+
+  @Test
+  void testShouldRejectInvalidOpenGoalsCursor() {
+    AssertionsForClassTypes.assertThatThrownBy(() -> underTest.getOpenGoals(CursorCodec.encode("soon", "notAnId"), 10))
+        .isInstanceOf(BadRequestException.class)
+        .hasMessageContaining("Invalid cursor");
+  }
+
+  @Test
+  void testShouldExportGoalsAsNdjson() throws Exception {
+    // given
+    var goals = List.of(
+        new Goal("author1", Instant.now(), "test title 1", "test desc"),
+        new Goal("author2", Instant.now(), "test title 2", "test desc")).iterator();
+    var cursor = new CloseableIterator<Goal>() {
+      @Override
+      public boolean hasNext() {
+        return goals.hasNext();
+      }
+
+      @Override
+      public Goal next() {
+        return goals.next();
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    var out = new ByteArrayOutputStream();
+    // when
+    when(mt.stream(any(Query.class), eq(Goal.class))).thenReturn(cursor);
+    var exported = underTest.exportGoals(GoalStatus.IN_PROGRESS, null, null, out);
+    // then
+    var lines = out.toString(StandardCharsets.UTF_8).split("\n");
+    AssertionsForClassTypes.assertThat(exported).isEqualTo(2);
+    AssertionsForClassTypes.assertThat(lines.length).isEqualTo(2);
+    AssertionsForClassTypes.assertThat(lines[1]).contains("\"author\":\"author2\"");
   }
 
   @Test
@@ -57,10 +286,54 @@ public class GoalServiceTest {
     var id = "testId";
     testGoal.setId(id);
     // when
-    Mockito.when(gr.findById(id)).thenReturn(Optional.of(testGoal));
+    when(cache.find(id, true)).thenReturn(Optional.of(testGoal));
     // then
-    var goal = underTest.getGoal(id);
+    var goal = underTest.getGoal(id, true);
     assertSame(testGoal, goal);
+    verify(mt, Mockito.never()).findOne(any(Query.class), eq(Goal.class));
+  }
+
+  @Test
+  void testShouldReturnGoalWithoutTasks() {
+    // given
+    var testGoal = new Goal("test author", Instant.now(), "test title", "test desc");
+    var id = "testId";
+    testGoal.setId(id);
+    // when
+    when(cache.find(id, false)).thenReturn(Optional.of(testGoal));
+    // then
+    var goal = underTest.getGoal(id, false);
+    AssertionsForClassTypes.assertThat(goal.getTasks()).isNull();
+  }
+
+  @Test
+  void testShouldLoadTasksFromTaskCollection() {
+    // given
+    var testGoal = new Goal("test author", Instant.now(), "test title", "test desc");
+    var id = "testId";
+    testGoal.setId(id);
+    var task = new Task("test task", Instant.now(), "test author");
+    // when
+    when(store.storesTasksOnGoal()).thenReturn(false);
+    when(store.findByGoal(id)).thenReturn(List.of(task));
+    when(cache.find(id, false)).thenReturn(Optional.of(testGoal));
+    // then
+    var goal = underTest.getGoal(id, true);
+    assertSame(task, goal.getTasks().get(0));
+  }
+
+  @Test
+  void testShouldReturnGoalSummaryById() {
+    // given
+    var testGoal = new Goal("test author", Instant.now(), "test title", "test desc");
+    var id = "testId";
+    testGoal.setId(id);
+    // when
+    when(cache.findSummary(id)).thenReturn(Optional.of(summary(testGoal)));
+    // then
+    var goal = underTest.getGoalSummary(id);
+    AssertionsForClassTypes.assertThat(goal.getAuthor()).isEqualTo("test author");
+    verify(gr, Mockito.never()).findById(id);
   }
 
   @Test
@@ -68,9 +341,8 @@ public class GoalServiceTest {
     // given
     var id = "id";
     // when
-    when(gr.findById(id)).thenReturn(Optional.empty());
     // then
-    AssertionsForClassTypes.assertThatThrownBy(() -> underTest.getGoal(id))
+    AssertionsForClassTypes.assertThatThrownBy(() -> underTest.getGoal(id, true))
         .isInstanceOf(ResourceNotFoundException.class)
         .hasMessageContaining("Could not find goal: " + id);
   }
@@ -83,7 +355,7 @@ public class GoalServiceTest {
     var testGoal = new Goal("wrongUsername", Instant.now(), "test title", "test desc");
     testGoal.setId(id);
     // when
-    Mockito.when(gr.findById(id)).thenReturn(Optional.of(testGoal));
+    Mockito.when(gr.findSummaryById(id)).thenReturn(Optional.of(summary(testGoal)));
     // then
     AssertionsForClassTypes.assertThatThrownBy(() -> underTest.invite(id, username))
         .isInstanceOf(BadRequestException.class)
@@ -92,17 +364,29 @@ public class GoalServiceTest {
 
   @Test
   void testCanInvite() {
+    // given
+    var id = "testId";
+    var username = "testUser";
+    // when
+    givenUpdateMatches();
+    var invCode = underTest.invite(id, username);
+    // then
+    AssertionsForClassTypes.assertThat(capturedSet().get("invCode")).isEqualTo(invCode);
+    verify(gr, Mockito.never()).findSummaryById(id);
+  }
+
+  @Test
+  void testShouldReturnExistingInviteCode() {
     // given
     var id = "testId";
     var username = "testUser";
     var testGoal = new Goal(username, Instant.now(), "test title", "test desc");
     testGoal.setId(id);
+    testGoal.setInvCode("testCode");
     // when
-    Mockito.when(gr.findById(id)).thenReturn(Optional.of(testGoal));
-    when(gr.save(any(Goal.class))).thenReturn(testGoal);
-    underTest.invite(id, username);
+    Mockito.when(gr.findSummaryById(id)).thenReturn(Optional.of(summary(testGoal)));
     // then
-    verify(gr).save(any(Goal.class));
+    AssertionsForClassTypes.assertThat(underTest.invite(id, username)).isEqualTo("testCode");
   }
 
   @Test
@@ -110,7 +394,7 @@ public class GoalServiceTest {
     // given
     var invCode = "testCode";
     // when
-    when(gr.findByInvCode(invCode)).thenReturn(List.of());
+    when(gr.findSummaryByInvCode(invCode)).thenReturn(List.of());
     // then
     AssertionsForClassTypes.assertThatThrownBy(() -> underTest.join(invCode, "testUser"))
         .isInstanceOf(ResourceNotFoundException.class)
@@ -124,7 +408,7 @@ public class GoalServiceTest {
     var username = "testUser";
     var goal = new Goal(username, Instant.now(), "Test Title", "Test Desc");
     // when
-    when(gr.findByInvCode(invCode)).thenReturn(List.of(goal));
+    when(gr.findSummaryByInvCode(invCode)).thenReturn(List.of(summary(goal)));
     // then
     AssertionsForClassTypes.assertThatThrownBy(() -> underTest.join(invCode, username))
         .isInstanceOf(BadRequestException.class)
@@ -140,7 +424,7 @@ public class GoalServiceTest {
     goal.setMentor1("demo1");
     goal.setMentor2("demo2");
     // when
-    when(gr.findByInvCode(invCode)).thenReturn(List.of(goal));
+    when(gr.findSummaryByInvCode(invCode)).thenReturn(List.of(summary(goal)));
     // then
     AssertionsForClassTypes.assertThatThrownBy(() -> underTest.join(invCode, "testUser"))
         .isInstanceOf(BadRequestException.class)
@@ -156,7 +440,7 @@ public class GoalServiceTest {
     goal.setId("testId");
     goal.setMentor1(username);
     // when
-    when(gr.findByInvCode(invCode)).thenReturn(List.of(goal));
+    when(gr.findSummaryByInvCode(invCode)).thenReturn(List.of(summary(goal)));
     // then
     AssertionsForClassTypes.assertThatThrownBy(() -> underTest.join(invCode, username))
         .isInstanceOf(BadRequestException.class)
@@ -170,11 +454,53 @@ public class GoalServiceTest {
     var goal = new Goal("testAuthor", Instant.now(), "Test Title", "Test Desc");
     goal.setId("testId");
     // when
-    when(gr.findByInvCode(invCode)).thenReturn(List.of(goal));
-    when(gr.save(any(Goal.class))).thenReturn(goal);
+    when(mt.findAndModify(any(Query.class), any(Update.class), eq(Goal.class))).thenReturn(goal);
     // then
+    AssertionsForClassTypes.assertThat(underTest.join(invCode, "testUser")).isEqualTo("testId");
+    ArgumentCaptor<Query> qac = ArgumentCaptor.forClass(Query.class);
+    ArgumentCaptor<Update> uac = ArgumentCaptor.forClass(Update.class);
+    verify(mt).findAndModify(qac.capture(), uac.capture(), eq(Goal.class));
+    AssertionsForClassTypes.assertThat(qac.getValue().getQueryObject().get("mentor1")).isNull();
+    AssertionsForClassTypes.assertThat(qac.getValue().getQueryObject().containsKey("mentor1")).isTrue();
+    AssertionsForClassTypes.assertThat(qac.getValue().getQueryObject().get("openSlots", Document.class).get("$exists"))
+        .isEqualTo(true);
+    AssertionsForClassTypes.assertThat(uac.getValue().getUpdateObject().get("$set", Document.class).get("mentor1"))
+        .isEqualTo("testUser");
+    var entry = uac.getValue().getUpdateObject().get("$push", Document.class).get("outbox", OutboxEntry.class);
+    AssertionsForClassTypes.assertThat(entry.getType()).isEqualTo(OutboxType.ADD_MENTORED);
+    AssertionsForClassTypes.assertThat(entry.getUsername()).isEqualTo("testUser");
+    AssertionsForClassTypes.assertThat(uac.getValue().getUpdateObject().get("$inc", Document.class).get("openSlots"))
+        .isEqualTo(-1);
+  }
+
+  @Test
+  void testJoinTakesSecondSlotWhenFirstIsTaken() {
+    // given
+    var invCode = "testCode";
+    var goal = new Goal("testAuthor", Instant.now(), "Test Title", "Test Desc");
+    goal.setId("testId");
+    // when
+    when(mt.findAndModify(any(Query.class), any(Update.class), eq(Goal.class))).thenReturn(null, goal);
     underTest.join(invCode, "testUser");
-    verify(gr).save(any(Goal.class));
+    // then
+    ArgumentCaptor<Update> uac = ArgumentCaptor.forClass(Update.class);
+    verify(mt, Mockito.times(2)).findAndModify(any(Query.class), uac.capture(), eq(Goal.class));
+    AssertionsForClassTypes.assertThat(uac.getValue().getUpdateObject().get("$set", Document.class).get("mentor2"))
+        .isEqualTo("testUser");
+  }
+
+  @Test
+  void testJoinReportsConcurrentModification() {
+    // given
+    var invCode = "testCode";
+    var goal = new Goal("testAuthor", Instant.now(), "Test Title", "Test Desc");
+    goal.setId("testId");
+    // when
+    when(gr.findSummaryByInvCode(invCode)).thenReturn(List.of(summary(goal)));
+    // then
+    AssertionsForClassTypes.assertThatThrownBy(() -> underTest.join(invCode, "testUser"))
+        .isInstanceOf(OptimisticLockingFailureException.class)
+        .hasMessageContaining("Goal: testId was modified concurrently");
   }
 
   @Test
@@ -185,7 +511,7 @@ public class GoalServiceTest {
     goal.setId(id);
     goal.setStatus(GoalStatus.COMPLETED);
     // when
-    when(gr.findById(id)).thenReturn(Optional.of(goal));
+    when(gr.findSummaryById(id)).thenReturn(Optional.of(summary(goal)));
     // then
     AssertionsForClassTypes.assertThatThrownBy(() -> underTest.leaveGoal(id, "testUser"))
         .isInstanceOf(BadRequestException.class)
@@ -202,7 +528,7 @@ public class GoalServiceTest {
     goal.setMentor1("testMentor1");
     goal.setMentor2("testMentor2");
     // when
-    when(gr.findById(id)).thenReturn(Optional.of(goal));
+    when(gr.findSummaryById(id)).thenReturn(Optional.of(summary(goal)));
     // then
     AssertionsForClassTypes.assertThatThrownBy(() -> underTest.leaveGoal(id, user))
         .isInstanceOf(BadRequestException.class)
@@ -214,18 +540,38 @@ public class GoalServiceTest {
     // given
     var id = "testId";
     var user = "testUser";
-    var goal = new Goal("testAuthor", Instant.now(), "Test Title", "Test Desc");
-    goal.setId(id);
-    goal.setMentor1(user);
     // when
-    when(gr.findById(id)).thenReturn(Optional.of(goal));
-    when(gr.save(any(Goal.class))).thenReturn(goal);
+    givenUpdateMatches();
     // then
     underTest.leaveGoal(id, user);
+    ArgumentCaptor<Query> qac = ArgumentCaptor.forClass(Query.class);
+    ArgumentCaptor<Update> uac = ArgumentCaptor.forClass(Update.class);
+    verify(mt).updateFirst(qac.capture(), uac.capture(), eq(Goal.class));
+    AssertionsForClassTypes.assertThat(qac.getValue().getQueryObject().get("openSlots", Document.class).get("$exists"))
+        .isEqualTo(true);
+    AssertionsForClassTypes.assertThat(uac.getValue().getUpdateObject().get("$unset", Document.class))
+        .satisfies(unset -> unset.containsKey("mentor1"));
+    var entry = uac.getValue().getUpdateObject().get("$push", Document.class).get("outbox", OutboxEntry.class);
+    AssertionsForClassTypes.assertThat(entry.getType()).isEqualTo(OutboxType.REMOVE_MENTORED);
+    AssertionsForClassTypes.assertThat(uac.getValue().getUpdateObject().get("$inc", Document.class).get("openSlots"))
+        .isEqualTo(1);
+    verify(gr, Mockito.never()).findSummaryById(id);
+  }
+
+  @Test
+  void testCreateGoalWritesOutboxEntryWithGoal() {
+    // given
+    var user = "testUser";
+    var data = new GoalDTO("Test Title", "Test Desc", Instant.now().toString());
+    // when
+    when(gr.save(any(Goal.class))).thenAnswer(i -> i.getArgument(0));
+    // then
+    underTest.createGoal(user, data);
     ArgumentCaptor<Goal> gac = ArgumentCaptor.forClass(Goal.class);
     verify(gr).save(gac.capture());
-    var capturedGoal = gac.getValue();
-    AssertionsForClassTypes.assertThat(capturedGoal.getMentor1()).isNull();
+    AssertionsForClassTypes.assertThat(gac.getValue().getOutbox().get(0).getType()).isEqualTo(OutboxType.ADD_GOAL);
+    AssertionsForClassTypes.assertThat(gac.getValue().getOutbox().get(0).getUsername()).isEqualTo(user);
+    verify(deadlines).scheduleGoal(gac.getValue().getId(), gac.getValue().getDeadline());
   }
 
   @Test
@@ -233,13 +579,35 @@ public class GoalServiceTest {
     // given
     var id = "testId";
     var user = "testUser";
-    var goal = new Goal(user, Instant.now(), "Test Title", "Test Desc");
-    goal.setId(id);
+    var deleted = new Goal(user, null, null, null);
+    deleted.setMentor1("testMentor");
     // when
-    when(gr.findById(id)).thenReturn(Optional.of(goal));
+    when(mt.findAndRemove(any(Query.class), eq(Goal.class))).thenReturn(deleted);
     // then
     underTest.deleteGoal(id, user);
-    verify(gr).delete(any(Goal.class));
+    ArgumentCaptor<Query> qac = ArgumentCaptor.forClass(Query.class);
+    verify(mt).findAndRemove(qac.capture(), eq(Goal.class));
+    AssertionsForClassTypes.assertThat(qac.getValue().getQueryObject().get("author")).isEqualTo(user);
+    verify(store).deleteByGoal(id);
+    ArgumentCaptor<GoalDeletedEvent> eac = ArgumentCaptor.forClass(GoalDeletedEvent.class);
+    verify(publisher).publishEvent(eac.capture());
+    AssertionsForClassTypes.assertThat(eac.getValue().getUsernames()).isEqualTo(Set.of(user, "testMentor"));
+  }
+
+  @Test
+  void testCannotDeleteGoalBecauseUserNotAuthor() {
+    // given
+    var id = "testId";
+    var user = "testUser";
+    var goal = new Goal("testAuthor", Instant.now(), "Test Title", "Test Desc");
+    goal.setId(id);
+    // when
+    when(gr.findSummaryById(id)).thenReturn(Optional.of(summary(goal)));
+    // then
+    AssertionsForClassTypes.assertThatThrownBy(() -> underTest.deleteGoal(id, user))
+        .isInstanceOf(BadRequestException.class)
+        .hasMessageContaining("User: " + user + " is not the author of goal: " + id);
+    verify(publisher, Mockito.never()).publishEvent(any());
   }
 
   @Test
@@ -251,7 +619,7 @@ public class GoalServiceTest {
     goal.setId(id);
     goal.setMentor1(user);
     // when
-    when(gr.findById(id)).thenReturn(Optional.of(goal));
+    when(gr.findSummaryById(id)).thenReturn(Optional.of(summary(goal)));
     // then
     AssertionsForClassTypes
         .assertThatThrownBy(() -> underTest.extendDeadline(id, user, Instant.now().minusSeconds(60 * 60).toString()))
@@ -264,23 +632,35 @@ public class GoalServiceTest {
     // given
     var id = "testId";
     var user = "testUser";
-    var goal = new Goal("testAuthor", Instant.now(), "Test Title", "Test Desc");
-    goal.setId(id);
-    goal.setMentor1(user);
     var deadline = Instant.now().plusSeconds(60 * 60 * 24);
     // when
-    when(gr.findById(id)).thenReturn(Optional.of(goal));
-    when(gr.save(any(Goal.class))).thenReturn(goal);
+    givenUpdateMatches();
     // then
     underTest.extendDeadline(id, user, deadline.toString());
-    ArgumentCaptor<Goal> gac = ArgumentCaptor.forClass(Goal.class);
-    verify(gr).save(gac.capture());
-    var capturedGoal = gac.getValue();
-    AssertionsForClassTypes.assertThat(capturedGoal.getDeadline()).isEqualTo(deadline);
+    AssertionsForClassTypes.assertThat(capturedSet().get("deadline")).isEqualTo(deadline);
+    AssertionsForClassTypes.assertThat(capturedSet().get("status")).isEqualTo(GoalStatus.IN_PROGRESS);
+    verify(deadlines).scheduleGoal(id, deadline);
   }
 
   @Test
   void testCanCompleteGoal() {
+    // given
+    var id = "testId";
+    var user = "testUser";
+    // when
+    givenUpdateMatches();
+    // then
+    underTest.completeGoal(id, user);
+    AssertionsForClassTypes.assertThat(capturedSet().get("status")).isEqualTo(GoalStatus.COMPLETED);
+    ArgumentCaptor<Update> uac = ArgumentCaptor.forClass(Update.class);
+    verify(mt).updateFirst(any(Query.class), uac.capture(), eq(Goal.class));
+    var entry = uac.getValue().getUpdateObject().get("$push", Document.class).get("outbox", OutboxEntry.class);
+    AssertionsForClassTypes.assertThat(entry.getType()).isEqualTo(OutboxType.COMPLETED);
+    verify(cache).evict(id);
+  }
+
+  @Test
+  void testRetriesCompleteGoalAfterConcurrentModification() {
     // given
     var id = "testId";
     var user = "testUser";
@@ -288,13 +668,46 @@ public class GoalServiceTest {
     goal.setId(id);
     goal.setMentor1(user);
     // when
-    when(gr.findById(id)).thenReturn(Optional.of(goal));
-    when(gr.save(any(Goal.class))).thenReturn(goal);
+    when(gr.findSummaryById(id)).thenReturn(Optional.of(summary(goal)));
+    when(mt.updateFirst(any(Query.class), any(Update.class), eq(Goal.class)))
+        .thenReturn(UpdateResult.acknowledged(0, 0L, null), UpdateResult.acknowledged(1, 1L, null));
     // then
     underTest.completeGoal(id, user);
-    ArgumentCaptor<Goal> gac = ArgumentCaptor.forClass(Goal.class);
-    verify(gr).save(gac.capture());
-    var capturedGoal = gac.getValue();
-    AssertionsForClassTypes.assertThat(capturedGoal.getStatus()).isEqualTo(GoalStatus.COMPLETED);
+    verify(mt, Mockito.times(2)).updateFirst(any(Query.class), any(Update.class), eq(Goal.class));
+    AssertionsForClassTypes.assertThat(registry.counter("sprint.retry.attempts", "operation", "goal.complete").count())
+        .isEqualTo(1.0);
+  }
+
+  @Test
+  void testGivesUpAfterMaxAttempts() {
+    // given
+    var invCode = "testCode";
+    var goal = new Goal("testAuthor", Instant.now(), "Test Title", "Test Desc");
+    goal.setId("testId");
+    // when
+    when(gr.findSummaryByInvCode(invCode)).thenReturn(List.of(summary(goal)));
+    // then
+    AssertionsForClassTypes.assertThatThrownBy(() -> underTest.join(invCode, "testUser"))
+        .isInstanceOf(OptimisticLockingFailureException.class);
+    verify(gr, Mockito.times(3)).findSummaryByInvCode(invCode);
+    AssertionsForClassTypes.assertThat(registry.counter("sprint.retry.exhausted", "operation", "goal.join").count())
+        .isEqualTo(1.0);
+  }
+
+  @Test
+  void testCannotCompleteGoalTwice() {
+    // given
+    var id = "testId";
+    var user = "testUser";
+    var goal = new Goal("testAuthor", Instant.now(), "Test Title", "Test Desc");
+    goal.setId(id);
+    goal.setMentor1(user);
+    goal.setStatus(GoalStatus.COMPLETED);
+    // when
+    when(gr.findSummaryById(id)).thenReturn(Optional.of(summary(goal)));
+    // then
+    AssertionsForClassTypes.assertThatThrownBy(() -> underTest.completeGoal(id, user))
+        .isInstanceOf(BadRequestException.class)
+        .hasMessageContaining("Goal: " + id + " is already completed");
   }
 }
@@ -0,0 +1,91 @@
+package io.github.iamzaidsheikh.sprint.leaderboard.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import io.github.iamzaidsheikh.sprint.leaderboard.model.LeaderboardEntry;
+import io.github.iamzaidsheikh.sprint.profile.event.CountersChangedEvent;
+import io.github.iamzaidsheikh.sprint.profile.model.UserProfile;
+
+public class LeaderboardServiceTest {
+
+  private LeaderboardService underTest;
+  @Mock
+  private MongoTemplate mt;
+  private AutoCloseable ac;
+
+  @BeforeEach
+  void setUp() {
+    ac = MockitoAnnotations.openMocks(this);
+    underTest = new LeaderboardService(mt, 2);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    ac.close();
+  }
+
+  private static UserProfile profile(String username, long completed, long mentored) {
+    var profile = new UserProfile(username, "test", "user", username);
+    profile.setNumGoalsCompleted(completed);
+    profile.setNumGoalsMentored(mentored);
+    return profile;
+  }
+
+  @Test
+  void testRebuildKeepsTopUsers() {
+    // given
+    var top = List.of(profile("a", 5, 0), profile("b", 3, 0));
+    // when
+    when(mt.find(any(Query.class), eq(UserProfile.class))).thenReturn(top);
+    underTest.rebuild();
+    // then
+    assertThat(underTest.getTopAchievers())
+        .containsExactly(new LeaderboardEntry("a", 5), new LeaderboardEntry("b", 3));
+  }
+
+  @Test
+  void testCounterChangeReordersAndEvicts() {
+    // given
+    when(mt.find(any(Query.class), eq(UserProfile.class)))
+        .thenReturn(List.of(profile("a", 5, 1), profile("b", 3, 2)))
+        .thenReturn(List.of(profile("a", 5, 1), profile("b", 3, 2)))
+        .thenReturn(List.of(profile("c", 4, 0)));
+    underTest.rebuild();
+    // when
+    underTest.onCountersChanged(new CountersChangedEvent(Set.of("c")));
+    // then
+    assertThat(underTest.getTopAchievers())
+        .containsExactly(new LeaderboardEntry("a", 5), new LeaderboardEntry("c", 4));
+    assertThat(underTest.getTopMentors())
+        .containsExactly(new LeaderboardEntry("b", 2), new LeaderboardEntry("a", 1));
+  }
+
+  @Test
+  void testCounterChangeBelowLastIsIgnored() {
+    // given
+    when(mt.find(any(Query.class), eq(UserProfile.class)))
+        .thenReturn(List.of(profile("a", 5, 0), profile("b", 3, 0)))
+        .thenReturn(List.of())
+        .thenReturn(List.of(profile("c", 1, 0)));
+    underTest.rebuild();
+    // when
+    underTest.onCountersChanged(new CountersChangedEvent(Set.of("c")));
+    // then
+    assertThat(underTest.getTopAchievers())
+        .containsExactly(new LeaderboardEntry("a", 5), new LeaderboardEntry("b", 3));
+  }
+}
@@ -0,0 +1,199 @@
+package io.github.iamzaidsheikh.sprint.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import io.github.iamzaidsheikh.sprint.exception.ResourceNotFoundException;
+import io.github.iamzaidsheikh.sprint.goal.event.GoalDeletedEvent;
+import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.goal.model.OutboxEntry;
+import io.github.iamzaidsheikh.sprint.goal.model.OutboxType;
+import io.github.iamzaidsheikh.sprint.profile.model.UserProfile;
+import io.github.iamzaidsheikh.sprint.profile.repo.ProfileCache;
+import io.github.iamzaidsheikh.sprint.profile.service.IUserProfileService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ProfileRelayTest {
+
+  private ProfileRelay underTest;
+  @Mock
+  private MongoTemplate mt;
+  @Mock
+  private IUserProfileService ups;
+  @Mock
+  private ProfileCache pc;
+  @Mock
+  private ApplicationEventPublisher publisher;
+  @Mock
+  private BulkOperations profiles;
+  @Mock
+  private BulkOperations relayed;
+  private SimpleMeterRegistry registry;
+  private AutoCloseable ac;
+
+  @BeforeEach
+  void setUp() {
+    ac = MockitoAnnotations.openMocks(this);
+    registry = new SimpleMeterRegistry();
+    underTest = new ProfileRelay(mt, ups, pc, registry, publisher, 100);
+    when(mt.bulkOps(BulkMode.ORDERED, UserProfile.class)).thenReturn(profiles);
+    when(mt.bulkOps(BulkMode.UNORDERED, Goal.class)).thenReturn(relayed);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    ac.close();
+  }
+
+  private static Goal goal(String id, OutboxEntry... entries) {
+    var goal = new Goal("testAuthor", Instant.now().plusSeconds(3600), "Test Title", "Test Desc");
+    goal.setId(id);
+    goal.setOutbox(new ArrayList<>(List.of(entries)));
+    return goal;
+  }
+
+  private static OutboxEntry entry(String eventId, OutboxType type, String username) {
+    return new OutboxEntry(eventId, type, username, Instant.now().minusSeconds(5));
+  }
+
+  @Test
+  void testRedeliveredAddGoesThroughProfileService() {
+    // given
+    var add = entry("e1", OutboxType.ADD_GOAL, "testAuthor");
+    // An earlier poll applied the entry but failed before pulling it
+    var goal = goal("a", add);
+    when(mt.find(any(Query.class), eq(Goal.class))).thenReturn(List.of(goal), List.of(goal));
+    // when
+    underTest.relayBatch();
+    underTest.relayBatch();
+    // then
+    ArgumentCaptor<Query> poll = ArgumentCaptor.forClass(Query.class);
+    // Each poll is followed by the check that the goal still exists
+    verify(mt, times(4)).find(poll.capture(), eq(Goal.class));
+    assertThat(poll.getAllValues().get(0).getQueryObject().get("outbox.0.at", Document.class).get("$exists")).isEqualTo(true);
+    // The service's push is guarded by the goal id, so the second call adds nothing
+    verify(ups, times(2)).addGoal(goal, "testAuthor");
+    verify(profiles, never()).execute();
+  }
+
+  @Test
+  void testProcessedEntriesArePulledByEventId() {
+    // given
+    var goal = goal("a", entry("e1", OutboxType.ADD_GOAL, "testAuthor"),
+        entry("e2", OutboxType.ADD_MENTORED, "testMentor"));
+    when(mt.find(any(Query.class), eq(Goal.class))).thenReturn(List.of(goal));
+    // when
+    var relayedGoals = underTest.relayBatch();
+    // then
+    assertThat(relayedGoals).isEqualTo(1);
+    ArgumentCaptor<Query> qac = ArgumentCaptor.forClass(Query.class);
+    ArgumentCaptor<Update> uac = ArgumentCaptor.forClass(Update.class);
+    verify(relayed).updateOne(qac.capture(), uac.capture());
+    assertThat(qac.getValue().getQueryObject().get("id")).isEqualTo("a");
+    var pulled = (Query) uac.getValue().getUpdateObject().get("$pull", Document.class).get("outbox");
+    assertThat(pulled.getQueryObject().get("eventId", Document.class).get("$in"))
+        .asList().containsExactly("e1", "e2");
+    verify(ups).addGoal(goal, "testAuthor");
+    verify(ups).addMentored(goal, "testMentor");
+    verify(relayed).execute();
+    assertThat(registry.counter("sprint.outbox.relayed").count()).isEqualTo(2);
+  }
+
+  @Test
+  void testCompletionIsCountedOncePerGoalWithoutCopy() {
+    // given
+    var goal = goal("a", entry("e1", OutboxType.COMPLETED, "testMentor"));
+    goal.setMentor1("testMentor");
+    when(mt.find(any(Query.class), eq(Goal.class))).thenReturn(List.of(goal));
+    // when
+    underTest.relayBatch();
+    // then
+    ArgumentCaptor<Query> qac = ArgumentCaptor.forClass(Query.class);
+    ArgumentCaptor<Update> uac = ArgumentCaptor.forClass(Update.class);
+    verify(profiles, times(4)).updateOne(qac.capture(), uac.capture());
+    // The counter is guarded by the counted ids, not by the GoalShort copy
+    var authorCount = qac.getAllValues().get(0).getQueryObject();
+    assertThat(authorCount.get("username")).isEqualTo("testAuthor");
+    assertThat(authorCount.get("counted_goals", Document.class).get("$ne")).isEqualTo("a");
+    assertThat(authorCount).doesNotContainKey("goals");
+    var update = uac.getAllValues().get(0).getUpdateObject();
+    assertThat(update.get("$inc", Document.class).get("numGoalsCompleted")).isEqualTo(1);
+    assertThat(update.get("$addToSet", Document.class).get("counted_goals")).isEqualTo("a");
+    var mentorCount = qac.getAllValues().get(2).getQueryObject();
+    assertThat(mentorCount.get("username")).isEqualTo("testMentor");
+    assertThat(mentorCount.get("counted_mentored", Document.class).get("$ne")).isEqualTo("a");
+    assertThat(uac.getAllValues().get(2).getUpdateObject().get("$inc", Document.class).get("numGoalsMentored"))
+        .isEqualTo(1);
+    verify(publisher).publishEvent(any(Object.class));
+  }
+
+  @Test
+  void testGoalDeletedWhileRelayedIsPulledAgain() {
+    // given
+    var goal = goal("a", entry("e1", OutboxType.ADD_GOAL, "testAuthor"),
+        entry("e2", OutboxType.ADD_MENTORED, "testMentor"));
+    // The second find checks which goals still exist after the adds
+    when(mt.find(any(Query.class), eq(Goal.class))).thenReturn(List.of(goal), List.of());
+    // when
+    underTest.relayBatch();
+    // then
+    ArgumentCaptor<Query> qac = ArgumentCaptor.forClass(Query.class);
+    verify(mt, times(2)).find(qac.capture(), eq(Goal.class));
+    assertThat(qac.getValue().getQueryObject().get("id", Document.class).get("$in")).asList().containsExactly("a");
+    verify(publisher).publishEvent(new GoalDeletedEvent("a", Set.of("testAuthor", "testMentor")));
+    verify(relayed).execute();
+  }
+
+  @Test
+  void testFailedProfileWriteKeepsEntries() {
+    // given
+    var goal = goal("a", entry("e1", OutboxType.ADD_GOAL, "testAuthor"));
+    when(mt.find(any(Query.class), eq(Goal.class))).thenReturn(List.of(goal));
+    // when
+    when(ups.addGoal(goal, "testAuthor")).thenThrow(new IllegalStateException("Write failed"));
+    underTest.relay();
+    // then
+    verify(relayed, never()).execute();
+    assertThat(registry.counter("sprint.outbox.failures").count()).isEqualTo(1);
+    assertThat(registry.counter("sprint.outbox.relayed").count()).isZero();
+  }
+
+  @Test
+  void testMissingProfileIsSkipped() {
+    // given
+    var goal = goal("a", entry("e1", OutboxType.ADD_MENTORED, "goneMentor"));
+    when(mt.find(any(Query.class), eq(Goal.class))).thenReturn(List.of(goal));
+    // when
+    when(ups.addMentored(goal, "goneMentor"))
+        .thenThrow(new ResourceNotFoundException("Could not find profile for user: goneMentor"));
+    underTest.relayBatch();
+    // then
+    verify(relayed).execute();
+    assertThat(registry.counter("sprint.outbox.relayed").count()).isEqualTo(1);
+  }
+
+}
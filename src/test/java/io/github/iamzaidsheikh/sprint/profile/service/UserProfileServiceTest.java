@@ -1,25 +1,35 @@
 package io.github.iamzaidsheikh.sprint.profile.service;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.Optional;
 
 import org.assertj.core.api.AssertionsForClassTypes;
+import org.bson.Document;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
+import com.mongodb.client.result.UpdateResult;
+
+import io.github.iamzaidsheikh.sprint.exception.BadRequestException;
 import io.github.iamzaidsheikh.sprint.exception.ResourceNotFoundException;
 import io.github.iamzaidsheikh.sprint.goal.model.Goal;
 import io.github.iamzaidsheikh.sprint.goal.model.GoalShort;
 import io.github.iamzaidsheikh.sprint.profile.model.UserProfile;
+import io.github.iamzaidsheikh.sprint.profile.repo.ProfileCache;
 import io.github.iamzaidsheikh.sprint.profile.repo.UserProfileRepo;
 
 public class UserProfileServiceTest {
@@ -27,12 +37,16 @@ public class UserProfileServiceTest {
     private UserProfileService underTest;
     @Mock
     private UserProfileRepo upr;
+    @Mock
+    private ProfileCache pc;
+    @Mock
+    private MongoTemplate mt;
     private AutoCloseable ac;
 
     @BeforeEach
     void setUp() {
         ac = MockitoAnnotations.openMocks(this);
-        underTest = new UserProfileService(upr);
+        underTest = new UserProfileService(upr, pc, mt);
     }
 
     @AfterEach
@@ -46,6 +60,8 @@ public class UserProfileServiceTest {
         var user = "testUser";
         var goal = new Goal(user, Instant.now(), "Test Title", "Test Desc");
         // when
+        when(mt.updateFirst(any(Query.class), any(Update.class), eq(UserProfile.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
         // then
         AssertionsForClassTypes.assertThatThrownBy(() -> underTest.addGoal(goal, user))
                 .isInstanceOf(ResourceNotFoundException.class)
@@ -56,62 +72,143 @@ public class UserProfileServiceTest {
     void testCanAddGoal() {
         // given
         var user = "testUser";
-        var id = "testId";
         var goalId = "goalId";
         var goal = new Goal(user, Instant.now(), "Test Title", "Test Desc");
         goal.setId(goalId);
-        var profile = new UserProfile(id, "test", "user", user);
         // when
-        when(upr.findByUsername(user)).thenReturn(Optional.of(profile));
-        when(upr.save(any(UserProfile.class))).thenReturn(profile);
+        when(mt.updateFirst(any(Query.class), any(Update.class), eq(UserProfile.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
         // then
         underTest.addGoal(goal, user);
-        ArgumentCaptor<UserProfile> upac = ArgumentCaptor.forClass(UserProfile.class);
-        verify(upr).save(upac.capture());
-        var capturedProfile = upac.getValue();
-        AssertionsForClassTypes.assertThat(capturedProfile.getGoals().get(0).getId()).isEqualTo(goalId);
+        ArgumentCaptor<Query> qac = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> uac = ArgumentCaptor.forClass(Update.class);
+        verify(mt).updateFirst(qac.capture(), uac.capture(), eq(UserProfile.class));
+        AssertionsForClassTypes.assertThat(qac.getValue().getQueryObject().get("goals.id", Document.class).get("$ne"))
+                .isEqualTo(goalId);
+        var added = uac.getValue().getUpdateObject().get("$push", Document.class).get("goals", GoalShort.class);
+        AssertionsForClassTypes.assertThat(added.getId()).isEqualTo(goalId);
+        verify(upr, never()).save(any(UserProfile.class));
+        verify(pc).evict(user);
+    }
+
+    @Test
+    void testAddGoalAlreadyListed() {
+        // given
+        var user = "testUser";
+        var goal = new Goal(user, Instant.now(), "Test Title", "Test Desc");
+        goal.setId("goalId");
+        // when
+        when(mt.updateFirst(any(Query.class), any(Update.class), eq(UserProfile.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+        when(mt.exists(any(Query.class), eq(UserProfile.class))).thenReturn(true);
+        // then
+        AssertionsForClassTypes.assertThat(underTest.addGoal(goal, user)).isEqualTo(user);
+        verify(pc, never()).evict(user);
+    }
+
+    @Test
+    void testGetProfileReadsThroughCache() {
+        // given
+        var user = "testUser";
+        var profile = new UserProfile("testId", "test", "user", user);
+        // when
+        when(pc.find(user)).thenReturn(Optional.of(profile));
+        // then
+        AssertionsForClassTypes.assertThat(underTest.getProfile(user, 0, ProfileCache.PAGE_SIZE)).isSameAs(profile);
+        verify(upr, never()).findPageByUsername(any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void testGetProfilePageBypassesCache() {
+        // given
+        var user = "testUser";
+        var profile = new UserProfile("testId", "test", "user", user);
+        profile.setGoalsTotal(45);
+        // when
+        when(upr.findPageByUsername(user, 40, 20)).thenReturn(Optional.of(profile));
+        // then
+        AssertionsForClassTypes.assertThat(underTest.getProfile(user, 40, 20).getGoalsTotal()).isEqualTo(45);
+        verify(pc, never()).find(user);
+    }
+
+    @Test
+    void testGetProfileRejectsInvalidPage() {
+        // given
+        var user = "testUser";
+        // when
+        // then
+        AssertionsForClassTypes.assertThatThrownBy(() -> underTest.getProfile(user, 0, UserProfileService.MAX_PAGE_SIZE + 1))
+                .isInstanceOf(BadRequestException.class);
+        AssertionsForClassTypes.assertThatThrownBy(() -> underTest.getProfile(user, -1, 10))
+                .isInstanceOf(BadRequestException.class);
     }
 
     @Test
     void testCanRemoveGoal() {
         // given
         var user = "testUser";
-        var id = "testId";
         var goalId = "goalId";
-        var goal = new Goal(user, Instant.now(), "Test Title", "Test Desc");
-        goal.setId(goalId);
-        var profile = new UserProfile(id, "test", "user", user);
-        var goals = new ArrayList<GoalShort>();
-        goals.add(new GoalShort(goalId, "Test Title", "Test Desc", user));
-        profile.setGoals(goals);
         // when
-        when(upr.findByUsername(user)).thenReturn(Optional.of(profile));
-        when(upr.save(any(UserProfile.class))).thenReturn(profile);
+        when(mt.updateFirst(any(Query.class), any(Update.class), eq(UserProfile.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
         // then
         underTest.removeGoal(goalId, user);
-        ArgumentCaptor<UserProfile> upac = ArgumentCaptor.forClass(UserProfile.class);
-        verify(upr).save(upac.capture());
-        var capturedProfile = upac.getValue();
-        AssertionsForClassTypes.assertThat(capturedProfile.getGoals().size()).isZero();
+        ArgumentCaptor<Query> qac = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> uac = ArgumentCaptor.forClass(Update.class);
+        verify(mt).updateFirst(qac.capture(), uac.capture(), eq(UserProfile.class));
+        AssertionsForClassTypes.assertThat(qac.getValue().getQueryObject().get("goals.id")).isEqualTo(goalId);
+        AssertionsForClassTypes.assertThat(uac.getValue().getUpdateObject().containsKey("$pull")).isTrue();
+        verify(pc).evict(user);
+    }
+
+    @Test
+    void testRemoveGoalNotInProfile() {
+        // given
+        var user = "testUser";
+        var goalId = "goalId";
+        // when
+        when(mt.updateFirst(any(Query.class), any(Update.class), eq(UserProfile.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+        when(mt.exists(any(Query.class), eq(UserProfile.class))).thenReturn(true);
+        // then
+        AssertionsForClassTypes.assertThatThrownBy(() -> underTest.removeGoal(goalId, user))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessageContaining("Could not find goal: " + goalId);
+        verify(pc, never()).evict(user);
     }
 
     @Test
     void testCanAddMentored() {
         // given
         var user = "testUser";
-        var id = "testId";
         var goalId = "goalId";
         var goal = new Goal(user, Instant.now(), "Test Title", "Test Desc");
         goal.setId(goalId);
-        var profile = new UserProfile(id, "test", "user", user);
         // when
-        when(upr.findByUsername(user)).thenReturn(Optional.of(profile));
-        when(upr.save(any(UserProfile.class))).thenReturn(profile);
+        when(mt.updateFirst(any(Query.class), any(Update.class), eq(UserProfile.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
         // then
         underTest.addMentored(goal, user);
-        ArgumentCaptor<UserProfile> upac = ArgumentCaptor.forClass(UserProfile.class);
-        verify(upr).save(upac.capture());
-        var capturedProfile = upac.getValue();
-        AssertionsForClassTypes.assertThat(capturedProfile.getMentored().size()).isNotZero();
+        ArgumentCaptor<Update> uac = ArgumentCaptor.forClass(Update.class);
+        verify(mt).updateFirst(any(Query.class), uac.capture(), eq(UserProfile.class));
+        var added = uac.getValue().getUpdateObject().get("$push", Document.class).get("mentored", GoalShort.class);
+        AssertionsForClassTypes.assertThat(added.getId()).isEqualTo(goalId);
+    }
+
+    @Test
+    void testRemoveMentoredNotInProfile() {
+        // given
+        var user = "testUser";
+        var goalId = "goalId";
+        // when
+        when(mt.updateFirst(any(Query.class), any(Update.class), eq(UserProfile.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+        when(mt.exists(any(Query.class), eq(UserProfile.class))).thenReturn(true);
+        // then
+        underTest.removeMentored(goalId, user);
+        ArgumentCaptor<Query> qac = ArgumentCaptor.forClass(Query.class);
+        verify(mt).updateFirst(qac.capture(), any(Update.class), eq(UserProfile.class));
+        AssertionsForClassTypes.assertThat(qac.getValue().getQueryObject().get("mentored.id")).isEqualTo(goalId);
+        verify(pc, never()).evict(user);
     }
 }
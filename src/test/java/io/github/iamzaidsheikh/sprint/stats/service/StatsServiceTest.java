@@ -0,0 +1,146 @@
+package io.github.iamzaidsheikh.sprint.stats.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+
+import io.github.iamzaidsheikh.sprint.exception.ResourceNotFoundException;
+import io.github.iamzaidsheikh.sprint.goal.event.GoalDeletedEvent;
+import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.stats.model.UserStats;
+import io.github.iamzaidsheikh.sprint.stats.repo.UserStatsRepo;
+import io.github.iamzaidsheikh.sprint.task.repo.TaskStore;
+
+public class StatsServiceTest {
+
+  private StatsService underTest;
+  @Mock
+  private MongoTemplate mt;
+  @Mock
+  private UserStatsRepo usr;
+  @Mock
+  private TaskStore store;
+  @Mock
+  private BulkOperations bulk;
+  private AutoCloseable ac;
+
+  @BeforeEach
+  void setUp() {
+    ac = MockitoAnnotations.openMocks(this);
+    underTest = new StatsService(mt, usr, store, 500);
+    when(store.storesTasksOnGoal()).thenReturn(true);
+    when(mt.getCollectionName(Goal.class)).thenReturn("goal");
+    when(mt.bulkOps(BulkMode.UNORDERED, UserStats.class)).thenReturn(bulk);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    ac.close();
+  }
+
+  private void givenAggregations(List<Document> authored, List<Document> mentored) {
+    when(mt.aggregate(any(Aggregation.class), eq("goal"), eq(Document.class)))
+        .thenReturn(new AggregationResults<>(authored, new Document()))
+        .thenReturn(new AggregationResults<>(mentored, new Document()));
+  }
+
+  @Test
+  void testGetStatsThrowsWhenNotMaterializedYet() {
+    // when
+    when(usr.findById("testUser")).thenReturn(Optional.empty());
+    // then
+    assertThatThrownBy(() -> underTest.getStats("testUser"))
+        .isInstanceOf(ResourceNotFoundException.class)
+        .hasMessageContaining("Could not find stats of user: testUser");
+  }
+
+  @Test
+  void testRecomputeDerivesAveragesAndRates() {
+    // given
+    var authored = new Document("_id", "a").append("authored", 2).append("completed", 1).append("tasks", 6)
+        .append("submitted", 4).append("approved", 3);
+    var mentored = new Document("_id", "a").append("mentored", 5).append("mentored_completed", 2);
+    // when
+    givenAggregations(List.of(authored), List.of(mentored));
+    underTest.recompute(List.of("a", "b"), Instant.now());
+    // then
+    ArgumentCaptor<Update> uac = ArgumentCaptor.forClass(Update.class);
+    verify(bulk, times(2)).upsert(any(Query.class), uac.capture());
+    var a = uac.getAllValues().get(0).getUpdateObject().get("$set", Document.class);
+    assertThat(a.get("avgTasksPerGoal")).isEqualTo(3.0);
+    assertThat(a.get("approvalRate")).isEqualTo(0.75);
+    assertThat(a.get("mentoredCompleted")).isEqualTo(2L);
+    // A user without goals is written with zeros rather than left stale
+    var b = uac.getAllValues().get(1).getUpdateObject().get("$set", Document.class);
+    assertThat(b.get("authored")).isEqualTo(0L);
+    assertThat(b.get("approvalRate")).isEqualTo(0.0);
+    verify(bulk).execute();
+  }
+
+  @Test
+  void testFailedRefreshKeepsWatermarkAndPendingUsers() {
+    // given
+    underTest.onGoalDeleted(new GoalDeletedEvent("goalId", Set.of("a")));
+    when(mt.findById(anyString(), eq(Document.class), anyString())).thenReturn(null);
+    // when
+    when(mt.stream(any(Query.class), eq(Goal.class)))
+        .thenThrow(new IllegalStateException("Read failed"))
+        .thenReturn(empty());
+    givenAggregations(List.of(), List.of());
+    underTest.refresh();
+    // then
+    verify(mt, never()).upsert(any(Query.class), any(Update.class), anyString());
+    underTest.refresh();
+    ArgumentCaptor<Query> qac = ArgumentCaptor.forClass(Query.class);
+    verify(bulk).upsert(qac.capture(), any(Update.class));
+    assertThat(qac.getValue().getQueryObject().get("username")).isEqualTo("a");
+    verify(mt).upsert(any(Query.class), any(Update.class), eq("stats_runs"));
+  }
+
+  private static CloseableIterator<Goal> empty() {
+    return new CloseableIterator<Goal>() {
+      @Override
+      public boolean hasNext() {
+        return false;
+      }
+
+      @Override
+      public Goal next() {
+        throw new NoSuchElementException();
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+}
@@ -1,43 +1,76 @@
 package io.github.iamzaidsheikh.sprint.task.service;
 
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
-import org.assertj.core.api.Assertions;
-import org.assertj.core.api.AssertionsForClassTypes;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.assertj.core.api.AssertionsForClassTypes;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import com.mongodb.client.result.UpdateResult;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
+import io.github.iamzaidsheikh.sprint.common.OptimisticRetry;
+import io.github.iamzaidsheikh.sprint.deadline.DeadlineScheduler;
 import io.github.iamzaidsheikh.sprint.exception.BadRequestException;
 import io.github.iamzaidsheikh.sprint.exception.ResourceNotFoundException;
 import io.github.iamzaidsheikh.sprint.goal.model.Goal;
+import io.github.iamzaidsheikh.sprint.goal.model.GoalSummary;
+import io.github.iamzaidsheikh.sprint.goal.repo.GoalCache;
 import io.github.iamzaidsheikh.sprint.goal.repo.GoalRepo;
 import io.github.iamzaidsheikh.sprint.task.dto.SubmitTaskDTO;
 import io.github.iamzaidsheikh.sprint.task.dto.TaskDTO;
+import io.github.iamzaidsheikh.sprint.task.dto.TaskRefDTO;
 import io.github.iamzaidsheikh.sprint.task.model.Task;
 import io.github.iamzaidsheikh.sprint.task.model.TaskStatus;
+import io.github.iamzaidsheikh.sprint.task.repo.CollectionTaskStore;
+import io.github.iamzaidsheikh.sprint.task.repo.EmbeddedTaskStore;
+import io.github.iamzaidsheikh.sprint.task.repo.TaskStore;
 
 public class TaskServiceTest {
 
     private TaskService underTest;
     @Mock
     private GoalRepo gr;
+    @Mock
+    private MongoTemplate mt;
+    @Mock
+    private GoalCache cache;
+    @Mock
+    private DeadlineScheduler deadlines;
     private AutoCloseable ac;
+    private final SpelAwareProxyProjectionFactory pf = new SpelAwareProxyProjectionFactory();
 
     @BeforeEach
     void setUp() {
         ac = MockitoAnnotations.openMocks(this);
-        underTest = new TaskService(gr);
+        underTest = taskService(new EmbeddedTaskStore(mt));
+        when(mt.updateFirst(any(Query.class), any(Update.class), eq(Goal.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
     }
 
     @AfterEach
@@ -47,6 +80,56 @@ public class TaskServiceTest {
 
     @Test
     void testCanCreateTask() {
+        // given
+        var id = "id";
+        var user = "testUser";
+        var data = new TaskDTO("Test Task Desc", Instant.now().minusSeconds(60 * 60 * 4).toString());
+        // when
+        givenUpdateMatches();
+        var taskId = underTest.createTask(id, user, data);
+        // then
+        var push = (Update.Modifiers) captured().getUpdateObject().get("$push", Document.class).get("tasks");
+        var modifiers = new HashMap<String, Object>();
+        push.getModifiers().forEach(m -> modifiers.put(m.getKey(), m.getValue()));
+        AssertionsForClassTypes.assertThat(modifiers.get("$position")).isEqualTo(0);
+        var task = (Task) ((Object[]) modifiers.get("$each"))[0];
+        AssertionsForClassTypes.assertThat(task.getId()).isEqualTo(taskId);
+        AssertionsForClassTypes.assertThat(task.getDesc()).isEqualTo(data.getDesc());
+        AssertionsForClassTypes.assertThat(task.getCreatedAt()).isEqualTo(task.getLastModified());
+        verify(mt, times(0)).findOne(any(Query.class), eq(Goal.class));
+        verify(deadlines).scheduleTasks(id, task.getDeadline());
+    }
+
+    @Test
+    void testCanCreateTasksInOneWrite() {
+        // given
+        var id = "id";
+        var user = "testUser";
+        var deadline = Instant.now().minusSeconds(60 * 60 * 4);
+        var data = List.of(
+                new TaskDTO("First Task Desc", deadline.minusSeconds(60).toString()),
+                new TaskDTO("Second Task Desc", deadline.toString()),
+                new TaskDTO("Third Task Desc", deadline.minusSeconds(120).toString()));
+        // when
+        givenUpdateMatches();
+        var taskIds = underTest.createTasks(id, user, data);
+        // then
+        var uac = ArgumentCaptor.forClass(Update.class);
+        var qac = ArgumentCaptor.forClass(Query.class);
+        verify(mt).updateFirst(qac.capture(), uac.capture(), eq(Goal.class));
+        var push = (Update.Modifiers) uac.getValue().getUpdateObject().get("$push", Document.class).get("tasks");
+        var modifiers = new HashMap<String, Object>();
+        push.getModifiers().forEach(m -> modifiers.put(m.getKey(), m.getValue()));
+        var pushed = (Object[]) modifiers.get("$each");
+        AssertionsForClassTypes.assertThat(pushed.length).isEqualTo(3);
+        AssertionsForClassTypes.assertThat(((Task) pushed[0]).getId()).isEqualTo(taskIds.get(2));
+        AssertionsForClassTypes.assertThat(((Task) pushed[2]).getId()).isEqualTo(taskIds.get(0));
+        AssertionsForClassTypes.assertThat(qac.getValue().getQueryObject().get("deadline", Document.class).get("$gte"))
+                .isEqualTo(deadline);
+    }
+
+    @Test
+    void testCouldNotCreateTasksBecauseOneIsAfterGoalDeadline() {
         // given
         var id = "id";
         var user = "testUser";
@@ -54,18 +137,15 @@ public class TaskServiceTest {
                 user, Instant.now(),
                 "Test Title",
                 "Test Desc");
-        var data = new TaskDTO("Test Task Desc", Instant.now().minusSeconds(60 * 60 * 4).toString());
+        var data = List.of(
+                new TaskDTO("First Task Desc", Instant.now().minusSeconds(60).toString()),
+                new TaskDTO("Second Task Desc", Instant.now().plusSeconds(60).toString()));
         // when
-        when(gr.findById(anyString())).thenReturn(Optional.of(goal));
-        underTest.createTask(id, user, data);
+        givenGoal(goal);
         // then
-        ArgumentCaptor<Goal> gac = ArgumentCaptor.forClass(Goal.class);
-        verify(gr).save(gac.capture());
-        var capturedGoal = gac.getValue();
-        AssertionsForClassTypes.assertThat(capturedGoal).satisfies(g -> {
-            g.getTasks().get(0).getDesc().equals(data.getDesc());
-        });
-        Assertions.assertThat(capturedGoal.getCreatedAt()).isEqualTo(capturedGoal.getLastModified());
+        AssertionsForClassTypes.assertThatThrownBy(() -> underTest.createTasks(id, user, data))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("Cannot create a task after goal deadline");
     }
 
     @Test
@@ -76,12 +156,13 @@ public class TaskServiceTest {
                 "testAuthor", Instant.now(),
                 "Test Title",
                 "Test Desc");
+        goal.setId(id);
         goal.setMentor1("mentor1");
         goal.setMentor2("mentor2");
         var data = new TaskDTO("Test Task Desc", Instant.now().minusSeconds(60 * 60 * 24 * 6).toString());
         var user = "testUser";
         // when
-        when(gr.findById(id)).thenReturn(Optional.of(goal));
+        givenGoal(goal);
         // then
         AssertionsForClassTypes.assertThatThrownBy(() -> underTest.createTask(id, user, data))
                 .isInstanceOf(BadRequestException.class)
@@ -99,13 +180,25 @@ public class TaskServiceTest {
                 "Test Desc");
         var data = new TaskDTO("Test Task Desc", Instant.now().plusSeconds(1).toString());
         // when
-        when(gr.findById(id)).thenReturn(Optional.of(goal));
+        givenGoal(goal);
         // then
         AssertionsForClassTypes.assertThatThrownBy(() -> underTest.createTask(id, user, data))
                 .isInstanceOf(BadRequestException.class)
                 .hasMessageContaining("Cannot create a task after goal deadline");
     }
 
+    @Test
+    void testCouldNotFindGoal() {
+        // given
+        var goalId = "goalId";
+        var data = new TaskDTO("Test Task Desc", Instant.now().toString());
+        // when
+        // then
+        AssertionsForClassTypes.assertThatThrownBy(() -> underTest.createTask(goalId, "testUser", data))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessageContaining("Could not find goal: " + goalId);
+    }
+
     @Test
     void testCouldNotFindTask() {
         // given
@@ -117,7 +210,7 @@ public class TaskServiceTest {
                 "Test Title",
                 "Test Desc");
         // when
-        when(gr.findById(goalId)).thenReturn(Optional.of(goal));
+        givenGoal(goal);
         // then
         AssertionsForClassTypes
                 .assertThatThrownBy(
@@ -132,35 +225,17 @@ public class TaskServiceTest {
         var goalId = "goalId";
         var taskId = "taskId";
         var user = "testUser";
-        var goal = new Goal(
-                user, Instant.now(),
-                "Test Title",
-                "Test Desc");
-        goal.setId(goalId);
-        var task = new Task("Test Desc", Instant.now(), "testAssignee");
-        var tasks = new ArrayList<Task>();
-        tasks.add(task);
-        task.setId(taskId);
         var submission = new SubmitTaskDTO("comment", "link");
-        goal.setTasks(tasks);
         // when
-        when(gr.findById(goalId)).thenReturn(Optional.of(goal));
-        when(gr.save(any(Goal.class))).thenReturn(goal);
-        // then
+        givenUpdateMatches();
         underTest.submitTask(goalId, taskId, user, submission);
-        ArgumentCaptor<Goal> gac = ArgumentCaptor.forClass(Goal.class);
-        verify(gr).save(gac.capture());
-        var capturedGoal = gac.getValue();
-        var capturedTask = capturedGoal.getTasks().stream().findFirst().filter(t -> t.getId().matches(taskId)).get();
-        AssertionsForClassTypes
-                .assertThat(
-                        capturedTask.getSubmission())
-                .isEqualTo(submission);
-        AssertionsForClassTypes
-                .assertThat(
-                        capturedTask.getStatus())
-                .isEqualTo(TaskStatus.PENDING);
-
+        // then
+        var update = captured();
+        var set = update.getUpdateObject().get("$set", Document.class);
+        AssertionsForClassTypes.assertThat(set.get("tasks.$[t].submission")).isEqualTo(submission);
+        AssertionsForClassTypes.assertThat(set.get("tasks.$[t].status")).isEqualTo(TaskStatus.PENDING);
+        AssertionsForClassTypes.assertThat(update.getArrayFilters().get(0).asDocument())
+                .isEqualTo(new Document("t._id", taskId));
     }
 
     @Test
@@ -176,12 +251,10 @@ public class TaskServiceTest {
         goal.setId(goalId);
         goal.setMentor1(user);
         var task = new Task("Test Desc", Instant.now(), "testAssignee");
-        var tasks = new ArrayList<Task>();
-        tasks.add(task);
         task.setId(taskId);
-        goal.setTasks(tasks);
+        goal.getTasks().add(task);
         // when
-        when(gr.findById(goalId)).thenReturn(Optional.of(goal));
+        givenGoal(goal);
         // then
         AssertionsForClassTypes.assertThatThrownBy(() -> underTest.approveTask(goalId, taskId, user))
                 .isInstanceOf(ResourceNotFoundException.class)
@@ -194,31 +267,75 @@ public class TaskServiceTest {
         var goalId = "goalId";
         var taskId = "taskId";
         var user = "testUser";
-        var goal = new Goal(
-                "testAuthor", Instant.now(),
-                "Test Title",
-                "Test Desc");
-        goal.setId(goalId);
-        goal.setMentor1(user);
-        var task = new Task("Test Desc", Instant.now(), "testAssignee");
-        task.setStatus(TaskStatus.PENDING);
-        var tasks = new ArrayList<Task>();
-        tasks.add(task);
-        task.setId(taskId);
-        goal.setTasks(tasks);
         // when
-        when(gr.findById(goalId)).thenReturn(Optional.of(goal));
-        when(gr.save(any(Goal.class))).thenReturn(goal);
-        // then
+        givenUpdateMatches();
         underTest.approveTask(goalId, taskId, user);
-        ArgumentCaptor<Goal> gac = ArgumentCaptor.forClass(Goal.class);
-        verify(gr).save(gac.capture());
-        var capturedGoal = gac.getValue();
-        var capturedTask = capturedGoal.getTasks().stream().findFirst().filter(t -> t.getId().matches(taskId)).get();
-        AssertionsForClassTypes
-                .assertThat(
-                        capturedTask.getStatus())
-                .isEqualTo(TaskStatus.COMPLETED);
+        // then
+        var update = captured();
+        var set = update.getUpdateObject().get("$set", Document.class);
+        AssertionsForClassTypes.assertThat(set.get("tasks.$[t].status")).isEqualTo(TaskStatus.COMPLETED);
+        AssertionsForClassTypes.assertThat(update.getArrayFilters().get(0).asDocument())
+                .isEqualTo(new Document("t._id", taskId));
+    }
+
+    @Test
+    void testCanApproveTasksInBulk() {
+        // given
+        var user = "testUser";
+        var mentored = new Goal("testAuthor", Instant.now(), "Test Title", "Test Desc");
+        mentored.setId("goal1");
+        mentored.setMentor1(user);
+        var pending = new Task("Test Desc", Instant.now(), "testAuthor");
+        pending.setId("task1");
+        pending.setStatus(TaskStatus.PENDING);
+        var unsubmitted = new Task("Test Desc", Instant.now(), "testAuthor");
+        unsubmitted.setId("task2");
+        var approvedMeanwhile = new Task("Test Desc", Instant.now(), "testAuthor");
+        approvedMeanwhile.setId("task6");
+        approvedMeanwhile.setStatus(TaskStatus.PENDING);
+        mentored.getTasks().add(pending);
+        mentored.getTasks().add(unsubmitted);
+        mentored.getTasks().add(approvedMeanwhile);
+        var other = new Goal("testAuthor", Instant.now(), "Test Title", "Test Desc");
+        other.setId("goal2");
+        var refs = List.of(
+                new TaskRefDTO("goal1", "task1"),
+                new TaskRefDTO("goal1", "task2"),
+                new TaskRefDTO("goal1", "task3"),
+                new TaskRefDTO("goal2", "task4"),
+                new TaskRefDTO("goal3", "task5"),
+                new TaskRefDTO("goal1", "task6"));
+        var bulk = Mockito.mock(BulkOperations.class);
+        // The write only reaches task1, task6 is approved by someone else first
+        when(bulk.updateOne(any(Query.class), any(Update.class))).thenAnswer(inv -> {
+            Update update = inv.getArgument(1);
+            pending.setLastModified((Instant) update.getUpdateObject().get("$set", Document.class)
+                    .get("tasks.$[t].lastModified"));
+            return bulk;
+        });
+        // when
+        when(gr.findSummaryByIdIn(any())).thenReturn(List.of(
+                pf.createProjection(GoalSummary.class, mentored),
+                pf.createProjection(GoalSummary.class, other)));
+        when(mt.find(any(Query.class), eq(Goal.class))).thenReturn(List.of(mentored));
+        when(mt.bulkOps(any(BulkMode.class), eq(Goal.class))).thenReturn(bulk);
+        var results = underTest.approveTasks(user, refs);
+        // then
+        AssertionsForClassTypes.assertThat(results.get(0).isApproved()).isTrue();
+        AssertionsForClassTypes.assertThat(results.get(1).getError())
+                .isEqualTo("There is no submission for task: task2");
+        AssertionsForClassTypes.assertThat(results.get(2).getError()).isEqualTo("Could not find task: task3");
+        AssertionsForClassTypes.assertThat(results.get(3).getError())
+                .isEqualTo("User: " + user + " is not a mentor of goal: goal2");
+        AssertionsForClassTypes.assertThat(results.get(4).getError()).isEqualTo("Could not find goal: goal3");
+        AssertionsForClassTypes.assertThat(results.get(5).isApproved()).isFalse();
+        AssertionsForClassTypes.assertThat(results.get(5).getError())
+                .isEqualTo("Goal: goal1 was modified concurrently");
+        var uac = ArgumentCaptor.forClass(Update.class);
+        verify(bulk, times(1)).updateOne(any(Query.class), uac.capture());
+        verify(bulk).execute();
+        AssertionsForClassTypes.assertThat(uac.getValue().getArrayFilters().get(0).asDocument().get("t._id"))
+                .isEqualTo(new Document("$in", Set.of("task1", "task6")));
     }
 
     @Test
@@ -237,12 +354,10 @@ public class TaskServiceTest {
         var testSubmission = new SubmitTaskDTO("comment", "link");
         task.setStatus(TaskStatus.PENDING);
         task.setSubmission(testSubmission);
-        var tasks = new ArrayList<Task>();
-        tasks.add(task);
         task.setId(taskId);
-        goal.setTasks(tasks);
+        goal.getTasks().add(task);
         // when
-        when(gr.findById(goalId)).thenReturn(Optional.of(goal));
+        givenGoal(goal);
         // then
         var submission = underTest.getSubmission(goalId, taskId, user);
         AssertionsForClassTypes
@@ -253,10 +368,71 @@ public class TaskServiceTest {
 
     @Test
     void testCanDeleteTask() {
+        // given
+        var goalId = "goalId";
+        var taskId = "taskId";
+        var user = "testUser";
+        // when
+        givenUpdateMatches();
+        underTest.deleteTask(goalId, taskId, user);
+        // then
+        var pull = captured().getUpdateObject().get("$pull", Document.class);
+        AssertionsForClassTypes.assertThat(((Query) pull.get("tasks")).getQueryObject())
+                .isEqualTo(new Document("id", taskId));
+        verify(cache).evict(goalId);
+    }
+
+    @Test
+    void testRetriesDeleteTaskAfterConcurrentModification() {
         // given
         var goalId = "goalId";
         var taskId = "taskId";
         var user = "testUser";
+        var goal = new Goal(
+                user, Instant.now(),
+                "Test Title",
+                "Test Desc");
+        goal.setId(goalId);
+        var task = new Task("Test Desc", Instant.now(), "testAssignee");
+        task.setId(taskId);
+        goal.getTasks().add(task);
+        // when
+        givenGoal(goal);
+        when(mt.updateFirst(any(Query.class), any(Update.class), eq(Goal.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        // then
+        underTest.deleteTask(goalId, taskId, user);
+        verify(mt, times(1)).findOne(any(Query.class), eq(Goal.class));
+        verify(mt, times(2)).updateFirst(any(Query.class), any(Update.class), eq(Goal.class));
+    }
+
+    @Test
+    void testCanCreateTaskInTaskCollection() {
+        // given
+        var id = new ObjectId().toHexString();
+        var user = "testUser";
+        var data = new TaskDTO("Test Task Desc", Instant.now().minusSeconds(60 * 60 * 4).toString());
+        underTest = taskService(new CollectionTaskStore(mt));
+        // when
+        givenUpdateMatches();
+        var taskId = underTest.createTask(id, user, data);
+        // then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Task>> tac = ArgumentCaptor.forClass(List.class);
+        verify(mt).insertAll(tac.capture());
+        var task = tac.getValue().get(0);
+        AssertionsForClassTypes.assertThat(task.getId()).isEqualTo(taskId);
+        AssertionsForClassTypes.assertThat(task.getGoalId()).isEqualTo(id);
+        AssertionsForClassTypes.assertThat(captured().getUpdateObject().containsKey("$push")).isFalse();
+    }
+
+    @Test
+    void testCannotApproveTaskInTaskCollectionWithoutSubmission() {
+        // given
+        var goalId = new ObjectId().toHexString();
+        var taskId = "taskId";
+        var user = "testUser";
         var goal = new Goal(
                 "testAuthor", Instant.now(),
                 "Test Title",
@@ -265,21 +441,37 @@ public class TaskServiceTest {
         goal.setMentor1(user);
         var task = new Task("Test Desc", Instant.now(), "testAssignee");
         task.setId(taskId);
-        var tasks = new ArrayList<Task>();
-        tasks.add(task);
-        goal.setTasks(tasks);
+        underTest = taskService(new CollectionTaskStore(mt));
         // when
-        when(gr.findById(goalId)).thenReturn(Optional.of(goal));
-        when(gr.save(any(Goal.class))).thenReturn(goal);
+        givenUpdateMatches();
+        when(mt.updateFirst(any(Query.class), any(Update.class), eq(Task.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+        when(gr.findSummaryById(goalId)).thenReturn(Optional.of(pf.createProjection(GoalSummary.class, goal)));
+        when(mt.findOne(any(Query.class), eq(Task.class))).thenReturn(task);
         // then
-        underTest.deleteTask(goalId, taskId, user);
-        ArgumentCaptor<Goal> gac = ArgumentCaptor.forClass(Goal.class);
-        verify(gr).save(gac.capture());
-        var capturedGoal = gac.getValue();
-        AssertionsForClassTypes
-                .assertThat(
-                        capturedGoal.getTasks().size())
-                .isZero();
+        AssertionsForClassTypes.assertThatThrownBy(() -> underTest.approveTask(goalId, taskId, user))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessageContaining("There is no submission for task: " + taskId);
+    }
+
+    private TaskService taskService(TaskStore store) {
+        return new TaskService(gr, store, cache, new OptimisticRetry(new SimpleMeterRegistry(), 3, Duration.ZERO, Duration.ZERO), deadlines);
+    }
+
+    private void givenGoal(Goal goal) {
+        when(gr.findSummaryById(any())).thenReturn(Optional.of(pf.createProjection(GoalSummary.class, goal)));
+        when(cache.findSummary(any())).thenReturn(Optional.of(pf.createProjection(GoalSummary.class, goal)));
+        when(mt.findOne(any(Query.class), eq(Goal.class))).thenReturn(goal);
+    }
+
+    private void givenUpdateMatches() {
+        when(mt.updateFirst(any(Query.class), any(Update.class), eq(Goal.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+    }
 
+    private Update captured() {
+        var uac = ArgumentCaptor.forClass(Update.class);
+        verify(mt).updateFirst(any(Query.class), uac.capture(), eq(Goal.class));
+        return uac.getValue();
     }
 }
@@ -0,0 +1,57 @@
+package io.github.iamzaidsheikh.sprint.threads;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.iamzaidsheikh.sprint.exception.ResourceNotFoundException;
+
+public class ExecutionModeTest {
+
+  @Test
+  void testPlatformModeLoadsOnCallingThread() {
+    // given
+    var underTest = new ExecutionMode(ExecutionMode.Mode.PLATFORM);
+    var caller = Thread.currentThread();
+    // when
+    var loadedOn = CompletableFuture.supplyAsync(Thread::currentThread, underTest.loader()).join();
+    // then
+    assertThat(loadedOn).isSameAs(caller);
+    assertThat(underTest.isVirtual()).isFalse();
+    assertThatThrownBy(underTest::virtualThreads).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void testVirtualModeFailsBeforeJava21() {
+    assumeTrue(Runtime.version().feature() < 21);
+    assertThatThrownBy(() -> new ExecutionMode(ExecutionMode.Mode.VIRTUAL))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("needs Java 21");
+  }
+
+  @Test
+  void testVirtualThreadsNeedJava21() {
+    assertThatThrownBy(() -> ExecutionMode.requireVirtualThreads(Runtime.Version.parse("17.0.9")))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("sprint.threads.mode=virtual needs Java 21 or later, running on: 17.0.9");
+    assertThatThrownBy(() -> ExecutionMode.requireVirtualThreads(Runtime.Version.parse("20")))
+        .isInstanceOf(IllegalStateException.class);
+    ExecutionMode.requireVirtualThreads(Runtime.Version.parse("21"));
+  }
+
+  @Test
+  void testAwaitRethrowsWhatTheLoadThrew() {
+    // when
+    var load = CompletableFuture.supplyAsync(() -> {
+      throw new ResourceNotFoundException("Could not find goal");
+    }, Runnable::run);
+    // then
+    assertThatThrownBy(() -> ExecutionMode.await(load))
+        .isInstanceOf(ResourceNotFoundException.class)
+        .hasMessage("Could not find goal");
+  }
+}
@@ -0,0 +1,138 @@
+package io.github.iamzaidsheikh.sprint.threads;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Compares the thread modes by throughput and p99 latency of profile reads at
+// high concurrency. Not part of the regular build; run it against the test
+// database and read the logged results:
+//
+//   mvn test -Dtest=ThreadModeLoadTest -Dsprint.load=true
+//
+// Virtual threads against the default pool at 5k clients. Virtual mode needs
+// Java 21 and the application refuses to start with it on older runtimes. Both
+// runs accept more connections than there are clients, so nothing is
+// left waiting for a connection and only the thread mode differs:
+//
+//   mvn test -Dtest=ThreadModeLoadTest -Dsprint.load=true -Dsprint.load.concurrency=5000 \
+//       -Dserver.tomcat.max-connections=10000 -Dsprint.threads.mode=platform
+//   mvn test -Dtest=ThreadModeLoadTest -Dsprint.load=true -Dsprint.load.concurrency=5000 \
+//       -Dserver.tomcat.max-connections=10000 -Dsprint.threads.mode=virtual
+@Slf4j
+@EnabledIfSystemProperty(named = "sprint.load", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class ThreadModeLoadTest {
+
+  private static final String USERNAME = "loadtest";
+
+  @LocalServerPort
+  private int port;
+  @Autowired
+  private TestRestTemplate rest;
+  @Value("${sprint.threads.mode}")
+  private String threads;
+  @Value("${server.tomcat.max-connections:8192}")
+  private int maxConnections;
+  @Value("${sprint.load.concurrency:400}")
+  private int concurrency;
+  @Value("${sprint.load.requests:20000}")
+  private int requests;
+
+  @Test
+  void testProfileReadsUnderLoad() throws Exception {
+    // given
+    // Clients beyond the connection limit would measure refusals, not threads
+    assertThat(maxConnections).isGreaterThan(concurrency);
+    var registered = rest.postForEntity("/api/v1/register", Map.of("firstName", "Load", "lastName", "Test",
+        "username", USERNAME, "password", "Secret#123"), String.class);
+    // Already there from a previous run
+    assertThat(registered.getStatusCodeValue()).isIn(201, 409);
+    var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/profile/" + USERNAME))
+        .timeout(Duration.ofSeconds(30))
+        .build();
+    Result result;
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    try {
+      var client = HttpClient.newBuilder()
+          .executor(executor)
+          .connectTimeout(Duration.ofSeconds(10))
+          .build();
+      run(client, request, Math.min(requests / 10, 2000));
+      // when
+      result = run(client, request, requests);
+    } finally {
+      executor.shutdownNow();
+    }
+    // then
+    log.info("threads={} max-connections={} concurrency={} requests={} throughput={} req/s p50={}ms p99={}ms"
+        + " statuses={} failed={}", threads, maxConnections, concurrency, requests, Math.round(result.throughput()), result.percentile(50),
+        result.percentile(99), result.statuses(), result.failed());
+    assertThat(result.statuses().keySet()).containsOnly(200);
+    assertThat(result.failed()).isZero();
+  }
+
+  private record Result(long[] latencies, long elapsed, Map<Integer, Integer> statuses, int failed) {
+
+    double throughput() {
+      return latencies.length * 1000.0 / elapsed;
+    }
+
+    long percentile(int p) {
+      return latencies[Math.max(0, (int) Math.ceil(latencies.length * p / 100.0) - 1)];
+    }
+  }
+
+  private Result run(HttpClient client, HttpRequest request, int count) throws InterruptedException {
+    var slots = new Semaphore(concurrency);
+    var latencies = new long[count];
+    var statuses = new ConcurrentHashMap<Integer, AtomicInteger>();
+    var failed = new AtomicInteger();
+    var started = System.nanoTime();
+    var futures = new CompletableFuture<?>[count];
+    for (int i = 0; i < count; i++) {
+      slots.acquire();
+      var n = i;
+      var sent = System.nanoTime();
+      futures[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+          .whenComplete((response, e) -> {
+            latencies[n] = (System.nanoTime() - sent) / 1_000_000;
+            if (e != null) {
+              failed.incrementAndGet();
+            } else {
+              statuses.computeIfAbsent(response.statusCode(), k -> new AtomicInteger()).incrementAndGet();
+            }
+            slots.release();
+          });
+    }
+    CompletableFuture.allOf(futures).exceptionally(e -> null).join();
+    var elapsed = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+    Arrays.sort(latencies);
+    var counts = new TreeMap<Integer, Integer>();
+    statuses.forEach((status, n) -> counts.put(status, n.get()));
+    return new Result(latencies, elapsed, counts, failed.get());
+  }
+}